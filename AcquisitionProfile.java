@@ -0,0 +1,76 @@
+/**
+ * This enum lists the acquisition profiles the ADCs can run at. Faster
+ * profiles trade resolution for conversion rate.
+ */
+public enum AcquisitionProfile {
+  SPS_240(Mcp342x.CMD_SPS_240, 240f, 12),
+  SPS_60(Mcp342x.CMD_SPS_60, 60f, 14),
+  SPS_15(Mcp342x.CMD_SPS_15, 15f, 16),
+  SPS_3(Mcp342x.CMD_SPS_3, 3.75f, 18);
+
+  private final byte sps; // sample rate bits of the configuration command
+  private final float rate; // conversions per second
+  private final int bits; // resolution of a conversion
+
+  AcquisitionProfile(byte sps, float rate, int bits) {
+    this.sps = sps;
+    this.rate = rate;
+    this.bits = bits;
+  }
+
+  /**
+   * Returns the continuous mode configuration command for this profile.
+   *
+   * @param channel channel bits (e.g. Mcp342x.CMD_CH_1)
+   * @param gain gain bits (e.g. Mcp342x.CMD_GAIN_1)
+   * @return the configuration command
+   */
+  public byte getConfig(byte channel, byte gain) {
+    return (byte) (channel | Mcp342x.CMD_MODE_CONT | sps | gain);
+  }
+
+  /**
+   * Returns the one-shot mode configuration command for this profile. Each
+   * conversion has to be started with Mcp342x.startConversion() or a general call.
+   *
+   * @param channel channel bits (e.g. Mcp342x.CMD_CH_1)
+   * @param gain gain bits (e.g. Mcp342x.CMD_GAIN_1)
+   * @return the configuration command
+   */
+  public byte getOneShotConfig(byte channel, byte gain) {
+    return (byte) (channel | Mcp342x.CMD_MODE_ONESHOT | sps | gain);
+  }
+
+  /**
+   * Returns the number of conversions per second.
+   *
+   * @return the conversion rate in Hz
+   */
+  public float getRate() {
+    return rate;
+  }
+
+  /**
+   * Returns the resolution of a conversion.
+   *
+   * @return the number of bits
+   */
+  public int getBits() {
+    return bits;
+  }
+
+  /**
+   * Finds the profile for a setting such as "240" or "SPS_240".
+   *
+   * @param name the rate or name of the profile
+   * @param def profile returned if the name doesn't match
+   * @return the matching profile or def
+   */
+  public static AcquisitionProfile parse(String name, AcquisitionProfile def) {
+    for (AcquisitionProfile p : values()) {
+      if (p.name().equalsIgnoreCase(name) || p.name().equals("SPS_" + name)) return p;
+    }
+    System.out.println("Unknown acquisition profile " + name + ", using " + def);
+    return def;
+  }
+}
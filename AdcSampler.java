@@ -0,0 +1,299 @@
+import java.io.*;
+
+/**
+ * This class samples one station's force sensor ADCs and publishes the
+ * voltages into a SampleRing so the JavaFX thread never touches the I2C bus.
+ * One-shot ADCs are triggered together and read afterwards so their
+ * conversions overlap and all axes describe the same moment.
+ *
+ * A sample is taken in short steps that never wait on the bus: start the
+ * conversions, then poll each ADC until it has a new conversion. A
+ * SamplingScheduler runs the steps of every station's sampler on one thread,
+ * so the stations' reads interleave while each keeps its own sample rate.
+ * On a real bus each step is handed to the bus's I2cBusExecutor as one
+ * batch, so its transactions run back to back after a single wakeup.
+ * Every sample also goes to a second ring when the station is recorded or
+ * streamed, so the recording keeps the samples the UI's ring drops.
+ *
+ * Each ADC has a CircuitBreaker. An ADC that stops answering is read as NaN
+ * volts, which the ForcePipeline leaves out of the combined force, and left
+ * alone except for a probe with exponential backoff, which opens the device
+ * again; the other axes keep sampling at the full rate, and while every ADC
+ * is out samples are still published so the force drops to 0. A bus
+ * that doesn't finish a step by its deadline only delays this sampler's
+ * next step. Each outage and recovery is printed once.
+ */
+public class AdcSampler {
+
+  private static final int POLLS_PER_CONVERSION = 4; // ready checks per conversion period
+  private static final String AXIS_NAMES[] = { "x", "y", "z" }; // axis of each ADC in messages
+  private static final int TRIP_FAILURES = 3; // failed transactions in a row before an ADC is left alone
+  private static final long FIRST_BACKOFF = 100000000L; // wait before the first probe of a dead ADC in ns
+  private static final long MAX_BACKOFF = 10000000000L; // longest wait between probes in ns
+
+  private final String name; // station the ADCs belong to, for messages
+
+  private final ForceSensor adcs[]; // x, y and z ADCs, null if an axis is unused
+  private final CircuitBreaker breakers[] = new CircuitBreaker[SampleRing.AXES]; // breaker of each ADC
+  private final ForceSensor.Latch latch; // starts every one-shot conversion at once, may be null
+  private final I2cBusExecutor bus; // runs the steps on the bus thread, null to run them here
+  private final I2cBusExecutor.Batch take_step = this::takeStep; // the current step as a bus batch
+  private final boolean one_shot; // are the ADCs triggered each sample
+  private final long conversion; // longest conversion time of the ADCs in ns
+  private final SampleRing ring; // where samples are published
+  private final SampleRing stream; // where every sample is also published, null if not recorded or streamed
+  private final PipelineMetrics metrics; // read latency and late ticks
+  private final long period; // time between samples in ns
+  private final float volts[] = new float[SampleRing.AXES]; // last voltage of each axis
+  private final int raws[] = new int[SampleRing.AXES]; // last counts of each axis
+  private boolean started = false; // has the first sample been scheduled
+  private int ready = 0; // bit per axis whose ADC is configured and answering
+  private int dead = 0; // bit per axis whose breaker is open
+  private boolean reading = false; // are the conversions of a sample being polled
+  private int pending = 0; // bit per axis still waiting for a new conversion
+  private boolean fresh = false; // did any axis get a new conversion this sample
+  private long stamp = 0; // time of the sample being taken in ns
+  private long read_deadline = 0; // give up on the axes still pending at this time in ns
+  private long next_sample = 0; // start of the next sample in ns
+  private volatile long due = 0; // time of the next step in ns, only set by the steps
+  private long step_time = 0; // time the current step was started in ns
+  private boolean bus_down = false; // did the last step fail on the bus, only touched by the scheduler thread
+  private long retry = 0; // no step before this after one failed on the bus in ns, only touched by the scheduler thread
+
+  /**
+   * Constructs a sampler for up to three ADCs.
+   *
+   * @param name station the ADCs belong to, for messages
+   * @param adcs the x, y and z ADCs, null entries are read as 0V
+   * @param latch starts all one-shot conversions with one write (e.g. an I2C
+   *              general call), null to start each ADC in turn
+   * @param bus executor of the ADCs' bus, null if they share no bus
+   * @param ring ring the samples are published to
+   * @param stream second ring the samples are published to, null for none
+   * @param metrics metrics the read latency and late ticks are recorded in
+   * @param rate_hz samples per second
+   */
+  public AdcSampler(
+    String name,
+    ForceSensor[] adcs,
+    ForceSensor.Latch latch,
+    I2cBusExecutor bus,
+    SampleRing ring,
+    SampleRing stream,
+    PipelineMetrics metrics,
+    float rate_hz
+  ) {
+    this.name = name;
+    this.adcs = adcs;
+    for (int i = 0; i < breakers.length; i++) breakers[i] = new CircuitBreaker(TRIP_FAILURES, FIRST_BACKOFF, MAX_BACKOFF);
+    this.latch = latch;
+    this.bus = bus;
+    boolean one_shot = false;
+    long conversion = 0;
+    for (ForceSensor adc : adcs) {
+      if (adc == null) continue;
+      one_shot |= adc.isOneShot();
+      conversion = Math.max(conversion, adc.getConversionTime());
+    }
+    this.one_shot = one_shot;
+    this.conversion = conversion;
+    this.ring = ring;
+    this.stream = stream;
+    this.metrics = metrics;
+    this.period = (long) (1e9 / rate_hz);
+  }
+
+  /**
+   * Returns when the sampler next needs the bus. After a step failed on the
+   * bus that is a period later at the earliest.
+   *
+   * @return the time of the next step in ns
+   */
+  public long getDue() {
+    long next = due;
+    return bus_down && next - retry < 0 ? retry : next;
+  }
+
+  /**
+   * Takes the next step of a sample: starts a sample when it is due,
+   * configuring the ADCs that aren't ready, or polls the ADCs that haven't
+   * returned a new conversion yet. A sample is published once every axis has
+   * a new conversion, or with the axes that have one after one and a half
+   * conversion periods.
+   *
+   * @param now the current time in ns
+   */
+  public void step(long now) {
+    step_time = now;
+    if (bus == null) {
+      takeStep();
+      return;
+    }
+    try {
+      bus.run(take_step);
+      if (bus_down) {
+        bus_down = false;
+        System.out.println(name + " I2C bus Responding again");
+      }
+    } catch (IOException e) {
+      // the step never ran or is still on the bus, where it may still set due,
+      // so only hold off the next step here
+      if (!bus_down) {
+        bus_down = true;
+        System.out.println(name + " I2C bus Not Responding: " + e.getMessage());
+      }
+      retry = now + period;
+    }
+  }
+
+  /**
+   * Takes the step started at step_time, on the bus thread when there is one.
+   */
+  private void takeStep() {
+    long now = step_time;
+    if (!started) {
+      next_sample = now;
+      started = true;
+    }
+    if (!reading) {
+      begin(now);
+      if (one_shot) return;
+    }
+    for (int i = 0; i < SampleRing.AXES; i++) {
+      if ((pending & (1 << i)) == 0) continue;
+      try {
+        boolean converted = adcs[i].poll();
+        answered(i);
+        if (converted) {
+          volts[i] = adcs[i].getVoltage();
+          raws[i] = adcs[i].getRaw();
+          pending &= ~(1 << i);
+          fresh = true;
+        }
+      } catch (IOException e) {
+        failed(i, now);
+      }
+    }
+    if (pending != 0 && now - read_deadline < 0) {
+      due = Math.min(now + conversion / POLLS_PER_CONVERSION, read_deadline);
+      return;
+    }
+    if (fresh || dead != 0) {
+      metrics.record(PipelineMetrics.Stage.READ, stamp, System.nanoTime());
+      if (stream != null) stream.offer(stamp, volts[0], volts[1], volts[2], raws[0], raws[1], raws[2]);
+      ring.offer(stamp, volts[0], volts[1], volts[2], raws[0], raws[1], raws[2]);
+    }
+    finish(System.nanoTime());
+  }
+
+  /**
+   * Starts a sample on the ADCs that are ready or can be made ready,
+   * triggering their one-shot conversions with the latch or back-to-back.
+   *
+   * @param now the current time in ns
+   */
+  private void begin(long now) {
+    reading = true;
+    fresh = false;
+    pending = 0;
+    for (int i = 0; i < SampleRing.AXES; i++) {
+      if (adcs[i] != null && ((ready & (1 << i)) != 0 || open(i, now))) pending |= 1 << i;
+    }
+    if (one_shot) {
+      boolean latched = false;
+      if (latch != null && pending != 0) {
+        try {
+          latch.latch();
+          latched = true;
+        } catch (IOException e) {} // start each ADC on its own to find the one that doesn't answer
+      }
+      for (int i = 0; i < SampleRing.AXES && !latched; i++) {
+        if ((pending & (1 << i)) == 0) continue;
+        try {
+          adcs[i].startConversion();
+          answered(i);
+        } catch (IOException e) {
+          failed(i, now);
+        }
+      }
+      stamp = now + conversion / 2; // middle of the conversion window
+      due = now + conversion;
+    } else {
+      stamp = now;
+      due = now;
+    }
+    read_deadline = now + conversion + conversion / 2;
+  }
+
+  /**
+   * Configures an ADC that isn't ready: the first time, after a failed
+   * transaction, or as a probe once its breaker's backoff has passed. A
+   * probe opens the device again before configuring it.
+   *
+   * @param axis the ADC's axis
+   * @param now the current time in ns
+   * @return true if the ADC is ready
+   */
+  private boolean open(int axis, long now) {
+    CircuitBreaker breaker = breakers[axis];
+    if (!breaker.allow(now)) return false;
+    try {
+      if (breaker.isOpen()) adcs[axis].reopen(); else adcs[axis].configure();
+    } catch (IOException e) {
+      failed(axis, now);
+      return false;
+    }
+    ready |= 1 << axis;
+    answered(axis);
+    return true;
+  }
+
+  /**
+   * Records a transaction an ADC answered.
+   *
+   * @param axis the ADC's axis
+   */
+  private void answered(int axis) {
+    if (!breakers[axis].success()) return;
+    dead &= ~(1 << axis);
+    System.out.println(name + " " + AXIS_NAMES[axis] + " ADC Responding again");
+  }
+
+  /**
+   * Records a transaction an ADC didn't answer. The ADC is configured again
+   * before its next sample, keeping its last reading, and once its breaker
+   * opens it has no reading.
+   *
+   * @param axis the ADC's axis
+   * @param now the current time in ns
+   */
+  private void failed(int axis, long now) {
+    ready &= ~(1 << axis);
+    pending &= ~(1 << axis);
+    if (breakers[axis].failure(now)) {
+      dead |= 1 << axis;
+      volts[axis] = Float.NaN;
+      raws[axis] = SampleRing.NO_RAW;
+      System.out.println(
+        name + " " + AXIS_NAMES[axis] + " ADC Not Responding, probing again in " +
+        breakers[axis].getBackoff() / 1000000 + " ms"
+      );
+    }
+  }
+
+  /**
+   * Ends the sample and schedules the next one at the fixed rate, skipping
+   * ahead instead of bursting if the sampler fell behind.
+   *
+   * @param now the current time in ns
+   */
+  private void finish(long now) {
+    reading = false;
+    next_sample += period;
+    if (next_sample - now < 0) {
+      metrics.lateSample();
+      next_sample = now;
+    }
+    due = next_sample;
+  }
+}
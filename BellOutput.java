@@ -0,0 +1,15 @@
+/**
+ * This interface is the output that drives the bell.
+ */
+public interface BellOutput {
+
+  /**
+   * Starts the bell.
+   */
+  void high();
+
+  /**
+   * Stops the bell.
+   */
+  void low();
+}
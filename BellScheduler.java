@@ -0,0 +1,59 @@
+import java.util.concurrent.*;
+
+/**
+ * This class rings the bell with timed pulses. The pin is raised right away
+ * and a scheduled task lowers it later, so no thread waits for the pulse.
+ */
+public class BellScheduler {
+
+  private final BellOutput pin; // bell output
+  private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+    r -> {
+      Thread t = new Thread(r, "bell");
+      t.setDaemon(true);
+      return t;
+    }
+  ); // runs the pin changes
+  private ScheduledFuture<?> release = null; // pending task that stops the bell
+
+  /**
+   * Constructs a scheduler for a bell output.
+   *
+   * @param pin the bell output
+   */
+  public BellScheduler(BellOutput pin) {
+    this.pin = pin;
+  }
+
+  /**
+   * Rings the bell for a time. Ringing again before the pulse ends extends it.
+   *
+   * @param duration_ms length of the pulse in ms
+   */
+  public synchronized void ring(long duration_ms) {
+    if (release != null) release.cancel(false);
+    executor.execute(pin::high);
+    release = executor.schedule(pin::low, duration_ms, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stops the bell now.
+   */
+  public synchronized void off() {
+    if (release != null) release.cancel(false);
+    release = null;
+    executor.execute(pin::low);
+  }
+
+  /**
+   * Stops the bell and the scheduler.
+   *
+   * @throws InterruptedException if the current thread is interrupted
+   */
+  public synchronized void shutdown() throws InterruptedException {
+    if (release != null) release.cancel(false);
+    executor.execute(pin::low);
+    executor.shutdown();
+    executor.awaitTermination(1, TimeUnit.SECONDS);
+  }
+}
@@ -0,0 +1,59 @@
+import java.util.List;
+import javafx.scene.chart.XYChart;
+
+/**
+ * This class is a line chart series with a fixed number of points. New samples
+ * are downsampled with LTTB and written into a pool of reused XYChart.Data
+ * objects, so the scene graph stays the same size however fast we sample or
+ * however long the demo runs.
+ */
+public class ChartSeries {
+
+  private final XYChart.Series<Number, Number> series = new XYChart.Series<>(); // series shown on the chart
+  private final XYChart.Data<Number, Number> pool[]; // reused data points
+  private final double xs[]; // downsampled times
+  private final float ys[]; // downsampled values
+
+  /**
+   * Constructs a series.
+   *
+   * @param points most points shown on the chart
+   */
+  public ChartSeries(int points) {
+    @SuppressWarnings("unchecked") // generic arrays can't be created directly
+    XYChart.Data<Number, Number> data[] = (XYChart.Data<Number, Number>[]) new XYChart.Data<?, ?>[points];
+    pool = data;
+    for (int i = 0; i < points; i++) pool[i] = new XYChart.Data<>(0, 0);
+    xs = new double[points];
+    ys = new float[points];
+  }
+
+  /**
+   * Returns the series to add to the chart.
+   *
+   * @return the chart series
+   */
+  public XYChart.Series<Number, Number> getSeries() {
+    return series;
+  }
+
+  /**
+   * Replaces the points of the series with a downsampled copy of a window.
+   *
+   * @param window samples to show
+   */
+  public void update(SlidingWindow window) {
+    int count = Lttb.downsample(window, pool.length, xs, ys);
+    List<XYChart.Data<Number, Number>> data = series.getData();
+
+    // grow or shrink with pooled points, only happens while the window fills
+    if (data.size() > count) data.subList(count, data.size()).clear();
+    while (data.size() < count) data.add(pool[data.size()]);
+
+    for (int i = 0; i < count; i++) {
+      XYChart.Data<Number, Number> point = pool[i];
+      point.setXValue(xs[i]);
+      point.setYValue(ys[i]);
+    }
+  }
+}
@@ -0,0 +1,101 @@
+/**
+ * This class keeps a failing device from being hammered. After a number of
+ * failures in a row the breaker opens and the device is left alone, except
+ * for one probe after a backoff that doubles with every failed probe. The
+ * first success closes the breaker again. It is not thread-safe; each
+ * breaker is used by the one thread that talks to its device.
+ */
+public class CircuitBreaker {
+
+  private final int trip_failures; // failures in a row that open the breaker
+  private final long first_backoff; // wait before the first probe in ns
+  private final long max_backoff; // longest wait between probes in ns
+  private int failures = 0; // failures in a row
+  private long backoff = 0; // wait before the next probe in ns, 0 while closed
+  private long probe_at = 0; // time of the next probe in ns
+  private long trips = 0; // times the breaker opened
+
+  /**
+   * Constructs a closed breaker.
+   *
+   * @param trip_failures failures in a row that open the breaker
+   * @param first_backoff wait before the first probe in ns
+   * @param max_backoff longest wait between probes in ns
+   */
+  public CircuitBreaker(int trip_failures, long first_backoff, long max_backoff) {
+    this.trip_failures = trip_failures;
+    this.first_backoff = first_backoff;
+    this.max_backoff = max_backoff;
+  }
+
+  /**
+   * Returns whether the device is being left alone.
+   *
+   * @return true while open, including when a probe is due
+   */
+  public boolean isOpen() {
+    return backoff != 0;
+  }
+
+  /**
+   * Returns whether the device may be used now: always while closed, and
+   * once the backoff has passed while open.
+   *
+   * @param now the current time in ns
+   * @return true if the device may be used
+   */
+  public boolean allow(long now) {
+    return backoff == 0 || now - probe_at >= 0;
+  }
+
+  /**
+   * Records a transaction the device answered.
+   *
+   * @return true if this closed the breaker
+   */
+  public boolean success() {
+    failures = 0;
+    if (backoff == 0) return false;
+    backoff = 0;
+    return true;
+  }
+
+  /**
+   * Records a transaction the device didn't answer. A failed probe doubles
+   * the backoff.
+   *
+   * @param now the current time in ns
+   * @return true if this opened the breaker
+   */
+  public boolean failure(long now) {
+    failures++;
+    if (backoff != 0) {
+      backoff = Math.min(backoff * 2, max_backoff);
+      probe_at = now + backoff;
+      return false;
+    }
+    if (failures < trip_failures) return false;
+    backoff = first_backoff;
+    probe_at = now + backoff;
+    trips++;
+    return true;
+  }
+
+  /**
+   * Returns the wait before the next probe.
+   *
+   * @return the backoff in ns, 0 while closed
+   */
+  public long getBackoff() {
+    return backoff;
+  }
+
+  /**
+   * Returns how many times the breaker opened.
+   *
+   * @return the number of trips
+   */
+  public long getTrips() {
+    return trips;
+  }
+}
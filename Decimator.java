@@ -0,0 +1,60 @@
+/**
+ * This class is a block-averaging decimator. Every sample is added as it
+ * arrives and the consumer takes one averaged output per display tick, so the
+ * display rate is independent of the sample rate. The largest sample of the
+ * block is kept so short peaks are not averaged away.
+ */
+public class Decimator {
+
+  private float sum = 0; // sum of the current block
+  private int count = 0; // samples in the current block
+  private float max = Float.NEGATIVE_INFINITY; // largest sample in the current block
+  private float output = 0; // last averaged output
+  private float outputMax = 0; // largest sample of the last output block
+
+  /**
+   * Adds a sample to the current block.
+   *
+   * @param value the sample
+   */
+  public void add(float value) {
+    sum += value;
+    count++;
+    if (value > max) max = value;
+  }
+
+  /**
+   * Ends the current block. If no samples arrived since the last call the
+   * previous output is held.
+   *
+   * @return the average of the block
+   */
+  public float take() {
+    if (count > 0) {
+      output = sum / count;
+      outputMax = max;
+      sum = 0;
+      count = 0;
+      max = Float.NEGATIVE_INFINITY;
+    }
+    return output;
+  }
+
+  /**
+   * Returns the largest sample of the block ended by the last take().
+   *
+   * @return the block maximum
+   */
+  public float getMax() {
+    return outputMax;
+  }
+
+  /**
+   * Returns the number of samples in the current block.
+   *
+   * @return the number of samples added since the last take()
+   */
+  public int getCount() {
+    return count;
+  }
+}
@@ -8,12 +8,40 @@ import java.util.*;
 /**
  * This class is used for controlling a Dotstar LED strip on a Rapberry Pi.
  */
-public class DotStar {
+public class DotStar implements LedStrip {
 
-  private static SpiDevice spi = null; /// Dotstar spi device
+  /**
+   * How brightness is applied. The APA102 has a 5-bit brightness field in
+   * every pixel header that dims the LED without losing color resolution.
+   */
+  public enum BrightnessMode {
+    SOFTWARE, /// Header always full, colors scaled in software
+    GLOBAL, /// Brightness sent in the header of every pixel, colors unscaled
+    PER_PIXEL, /// Header level set per pixel with setPixelBrightness(), colors scaled by the global brightness
+    HYBRID /// Header dims in 31 steps, software scales the remainder for extra range
+  }
+
+  private static final int START_FRAME_BYTES = 4; /// Zero bytes that open every frame
+  private static final int PIXEL_BYTES = 4; /// Header + 3 color bytes per pixel
+  private static final int HEADER = 0xE0; /// Pixel start bits of the header
+  private static final int MAX_LEVEL = 31; /// Largest header brightness level
+
+  private SpiDevice spi = null; /// Dotstar spi device
   private int numLEDs; /// Number of pixels
-  private byte brightness=(byte)255; /// Global brightness setting
-  private int pixels[]; /// LED RGB values (3 bytes ea.)
+  private int brightness = 255; /// Global brightness setting (0-255)
+  private float gamma = 1; /// Gamma applied to every color byte
+  private BrightnessMode mode = BrightnessMode.HYBRID; /// How brightness is applied
+  private int headerLevel = MAX_LEVEL; /// Header brightness level used by every pixel outside PER_PIXEL mode
+  private final byte levels[] = new byte[256]; /// Color byte to wire byte, brightness and gamma applied
+  private int pixels[]; /// LED RGB values packed as 0xRRGGBB
+  private byte pixelLevels[]; /// Header brightness level of each pixel in PER_PIXEL mode
+  private byte headers[]; /// Header byte sent for each pixel
+  private byte frame[]; /// Wire-format frame sent to the strip
+  private byte lastFrame[]; /// Copy of the last frame that reached the strip
+  private boolean lastFrameValid = false; /// Has lastFrame been sent yet
+  private boolean dirty = true; /// Pixels or brightness changed since the last show()
+  private long framesSent = 0; /// Frames written to the strip
+  private long framesSkipped = 0; /// Frames dropped because nothing changed
   private byte rOffset; /// Index of red in 3-byte pixel
   private byte gOffset; /// Index of green byte
   private byte bOffset; /// Index of blue byte
@@ -28,7 +56,23 @@ public class DotStar {
    * @throws IOException Thrown if the SPI connection fails to initialize or the write to clear the LEDs fails.
    */
   public DotStar(int num_leds, String order) throws IOException {
-    begin();
+    this(num_leds, order, null);
+  }
+
+  /**
+   * Constructs a Dotstar object on an existing SPI device.
+   *
+   * @param num_leds The number of LEDs in the strand.
+   * @param order String representation of the order of pixels.
+   * 				(e.g. "RGB")
+   * @param device SPI device the strip is on, null to open SPI channel 0.
+   *
+   * @throws IOException Thrown if the SPI connection fails to initialize or the write to clear the LEDs fails.
+   */
+  public DotStar(int num_leds, String order, SpiDevice device) throws IOException {
+    spi = device;
+    if (spi == null) begin();
+    updateLevels();
     setColorOrder(order);
     updateLength(num_leds);
     clear();
@@ -65,6 +109,7 @@ public class DotStar {
     rOffset = (byte) order.indexOf('R');
     gOffset = (byte) order.indexOf('G');
     bOffset = (byte) order.indexOf('B');
+    dirty = true;
   }
 
   /**
@@ -74,14 +119,26 @@ public class DotStar {
    */
   public void updateLength(int num_leds) {
     numLEDs = num_leds;
-    pixels = new int[num_leds * 3];
+    pixels = new int[num_leds];
+    pixelLevels = new byte[num_leds];
+    Arrays.fill(pixelLevels, (byte) MAX_LEVEL);
+    headers = new byte[num_leds];
+    // The end frame has to clock out at least half a bit per pixel so the
+    // data reaches the last LED. Zeros keep any extra LEDs past the end dark.
+    frame = new byte[START_FRAME_BYTES + num_leds * PIXEL_BYTES + (num_leds + 15) / 16];
+    updateHeaders();
+    lastFrame = new byte[frame.length];
+    lastFrameValid = false;
+    dirty = true;
   }
 
   /**
    * Sets all pixels to OFF.
    */
+  @Override
   public void clear() {
     Arrays.fill(pixels, 0);
+    dirty = true;
   }
 
   /**
@@ -109,14 +166,42 @@ public class DotStar {
    * @param   g  Green, 0=minimum (off), 255=brightest.
    * @param   b  Blue, 0=minimum (off), 255=brightest.
    */
+  @Override
   public void setPixelColor(int index, int r, int g, int b) {
     if (index < numLEDs) {
-      pixels[index * 3 + rOffset] = r;
-      pixels[index * 3 + gOffset] = g;
-      pixels[index * 3 + bOffset] = b;
+      pixels[index] = color(r, g, b);
+      dirty = true;
     }
   }
 
+  /**
+   * Copies packed colors onto the first pixels of the strip and turns the
+   * rest off. Does not immediately affect what's currently displayed on the
+   * LEDs. The next call to show() will refresh the LEDs.
+   *
+   * @param   colors  Colors packed with color(), e.g. a precomputed palette.
+   * @param   count  Number of pixels to copy from colors.
+   */
+  @Override
+  public void setPixels(int[] colors, int count) {
+    count = Math.max(0, Math.min(count, Math.min(numLEDs, colors.length)));
+    System.arraycopy(colors, 0, pixels, 0, count);
+    Arrays.fill(pixels, count, numLEDs, 0);
+    dirty = true;
+  }
+
+  /**
+   * Packs an RGB value into the format used by setPixels().
+   *
+   * @param   r  Red, 0=minimum (off), 255=brightest.
+   * @param   g  Green, 0=minimum (off), 255=brightest.
+   * @param   b  Blue, 0=minimum (off), 255=brightest.
+   * @return the packed color
+   */
+  public static int color(int r, int g, int b) {
+    return ((r & 0xFF) << 16) | ((g & 0xFF) << 8) | (b & 0xFF);
+  }
+
   /**
    * Adjust output brightness. Does not immediately affect what's
    * currently displayed on the LEDs. The next call to show() will
@@ -125,32 +210,148 @@ public class DotStar {
    * @param   b  Brightness setting, 0=minimum (off), 255=brightest.
    */
   public void setBrightness(int b) {
-    brightness = (byte) (b + 1);
+    brightness = Math.max(0, Math.min(255, b));
+    updateLevels();
+  }
+
+  /**
+   * Adjust the gamma correction applied to every color byte. 1 sends colors
+   * unchanged, around 2.2 makes fades look even to the eye. Does not
+   * immediately affect what's currently displayed on the LEDs.
+   *
+   * @param   g  Gamma exponent, greater than 0.
+   */
+  public void setGamma(float g) {
+    gamma = g > 0 ? g : 1;
+    updateLevels();
+  }
+
+  /**
+   * Rebuilds the color lookup table after the brightness or gamma changed, so
+   * show() only does table lookups.
+   */
+  private void updateLevels() {
+    double scale; // software part of the brightness
+    switch (mode) {
+      case GLOBAL:
+        headerLevel = Math.round(brightness * MAX_LEVEL / 255f);
+        scale = 1;
+        break;
+      case HYBRID:
+        headerLevel = (brightness * MAX_LEVEL + 254) / 255; // round up, software only dims
+        scale = headerLevel > 0 ? brightness / 255.0 * MAX_LEVEL / headerLevel : 0;
+        break;
+      default:
+        headerLevel = MAX_LEVEL;
+        scale = brightness / 255.0;
+    }
+    for (int i = 0; i < 256; i++) {
+      levels[i] = (byte) Math.round(Math.pow(i / 255.0, gamma) * scale * 255);
+    }
+    updateHeaders();
+  }
+
+  /**
+   * Rebuilds the header byte of every pixel.
+   */
+  private void updateHeaders() {
+    if (headers == null) return;
+    for (int i = 0; i < numLEDs; i++) {
+      int level = mode == BrightnessMode.PER_PIXEL ? pixelLevels[i] : headerLevel;
+      headers[i] = (byte) (HEADER | level);
+    }
+    dirty = true;
+  }
+
+  /**
+   * Selects how brightness is applied. Does not immediately affect what's
+   * currently displayed on the LEDs.
+   *
+   * @param   m  The brightness mode.
+   */
+  public void setBrightnessMode(BrightnessMode m) {
+    mode = m;
+    updateLevels();
+  }
+
+  /**
+   * Sets the hardware brightness of one pixel. Only used in PER_PIXEL mode.
+   * Does not immediately affect what's currently displayed on the LEDs.
+   *
+   * @param   index  Index of the pixel.
+   * @param   level  Header brightness, 0=minimum (off), 31=brightest.
+   */
+  public void setPixelBrightness(int index, int level) {
+    if (index < numLEDs) {
+      pixelLevels[index] = (byte) Math.max(0, Math.min(MAX_LEVEL, level));
+      if (mode == BrightnessMode.PER_PIXEL) {
+        headers[index] = (byte) (HEADER | pixelLevels[index]);
+        dirty = true;
+      }
+    }
+  }
+
+  /**
+   * Returns the number of frames written to the strip.
+   *
+   * @return the number of frames sent over SPI
+   */
+  @Override
+  public long getFramesSent() {
+    return framesSent;
   }
 
   /**
-   * Sends the stored pixel values to the strip.
+   * Returns the number of show() calls that did not reach the strip because
+   * the frame was identical to the one already displayed.
+   *
+   * @return the number of skipped frames
+   */
+  @Override
+  public long getFramesSkipped() {
+    return framesSkipped;
+  }
+
+  /**
+   * Sends the stored pixel values to the strip. The whole frame is encoded
+   * into one buffer and written in as few SPI transfers as the driver allows.
+   * Nothing is sent if the frame matches the one already on the strip.
    *
    * @throws IOException Thrown if the write to the strip fails.
    */
+  @Override
   public void show() throws IOException {
     if (pixels.length == 0) return;
+    if (!dirty && lastFrameValid) {
+      framesSkipped++;
+      return;
+    }
 
-	float brightnessScalar = (float)brightness/255;
+    // LED Data, the start frame and end frame never change
+    int pos = START_FRAME_BYTES;
+    for (int i = 0; i < numLEDs; i++, pos += PIXEL_BYTES) {
+      int c = pixels[i];
+      frame[pos] = headers[i]; // Pixel start and brightness
+      frame[pos + 1 + rOffset] = levels[(c >> 16) & 0xFF];
+      frame[pos + 1 + gOffset] = levels[(c >> 8) & 0xFF];
+      frame[pos + 1 + bOffset] = levels[c & 0xFF];
+    }
 
-    // 4 byte start-frame marker
-    for (int i = 0; i < 4; i++) spi.write((byte) 0x00);
+    // A clear() followed by the same pixels encodes to the same frame
+    if (lastFrameValid && Arrays.equals(frame, lastFrame)) {
+      dirty = false;
+      framesSkipped++;
+      return;
+    }
 
-    // LED Data
-    for (int i = 0; i < numLEDs; i++) {
-      spi.write((byte) 0xFF); // Pixel start
-      for (int l = 0; l < 3; l++) spi.write((byte) (pixels[i * 3 + l]*brightnessScalar)); // Pixel color
+    // spidev rejects transfers larger than its buffer, so split if needed
+    lastFrameValid = false;
+    for (int off = 0; off < frame.length; off += SpiDevice.MAX_SUPPORTED_BYTES) {
+      spi.write(frame, off, Math.min(SpiDevice.MAX_SUPPORTED_BYTES, frame.length - off));
     }
-    // Four end-frame bytes reccomended by datasheet
-    // They turn the LED after the last on if the strip is longer than
-    // the specified length.
-    /**for (int j = 0; j < 4; j++)
-     *  spi.write((byte)0xFF);
-     */
+    System.arraycopy(frame, 0, lastFrame, 0, frame.length);
+    lastFrameValid = true;
+    dirty = false;
+    framesSent++;
   }
 }
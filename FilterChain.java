@@ -0,0 +1,181 @@
+import java.util.*;
+
+/**
+ * This class runs one axis' samples through a chain of streaming filters
+ * before they are converted to force. The chain is built from a setting such
+ * as "median:3,iir:0.3", applied left to right:
+ *   median:N  median of the last N samples, rejects single spikes
+ *   avg:N     mean of the last N samples
+ *   iir:A     first-order low-pass, y += A * (x - y), A between 0 and 1
+ * Every filter works on primitive rings sized when the chain is built, so
+ * filtering a sample never allocates.
+ */
+public class FilterChain {
+
+  /**
+   * One streaming filter.
+   */
+  public interface Filter {
+    /**
+     * Filters one sample.
+     *
+     * @param x the input
+     * @return the output
+     */
+    float apply(float x);
+  }
+
+  /**
+   * First-order IIR low-pass filter.
+   */
+  public static class Iir implements Filter {
+
+    private final float alpha; // weight of the new sample
+    private float y = 0; // last output
+    private boolean primed = false; // has a sample been seen
+
+    /**
+     * Constructs a low-pass filter.
+     *
+     * @param alpha weight of each new sample, 1 passes samples unchanged
+     */
+    public Iir(float alpha) {
+      this.alpha = Math.max(0, Math.min(1, alpha));
+    }
+
+    @Override
+    public float apply(float x) {
+      if (!primed) {
+        y = x;
+        primed = true;
+      } else y += alpha * (x - y);
+      return y;
+    }
+  }
+
+  /**
+   * Moving average over a fixed number of samples.
+   */
+  public static class MovingAverage implements Filter {
+
+    private final float window[]; // last samples, oldest overwritten first
+    private int count = 0; // samples in the window
+    private int next = 0; // slot of the next sample
+    private double sum = 0; // sum of the samples in the window
+
+    /**
+     * Constructs a moving average.
+     *
+     * @param size number of samples averaged
+     */
+    public MovingAverage(int size) {
+      window = new float[Math.max(1, size)];
+    }
+
+    @Override
+    public float apply(float x) {
+      if (count == window.length) sum -= window[next];
+      else count++;
+      window[next] = x;
+      sum += x;
+      next = (next + 1) % window.length;
+      return (float) (sum / count);
+    }
+  }
+
+  /**
+   * Median over a small fixed number of samples. The window is also kept
+   * sorted, so each sample costs one removal and one insertion.
+   */
+  public static class Median implements Filter {
+
+    private final float window[]; // last samples, oldest overwritten first
+    private final float sorted[]; // the same samples in ascending order
+    private int count = 0; // samples in the window
+    private int next = 0; // slot of the next sample
+
+    /**
+     * Constructs a median filter.
+     *
+     * @param size number of samples, odd sizes give a true middle sample
+     */
+    public Median(int size) {
+      window = new float[Math.max(1, size)];
+      sorted = new float[window.length];
+    }
+
+    @Override
+    public float apply(float x) {
+      int n = count;
+      if (count == window.length) {
+        // take the oldest sample out of the sorted copy
+        float old = window[next];
+        int i = 0;
+        while (i < n - 1 && sorted[i] != old) i++;
+        System.arraycopy(sorted, i + 1, sorted, i, n - 1 - i);
+        n--;
+      } else count++;
+      window[next] = x;
+      next = (next + 1) % window.length;
+
+      // insert the new sample in order
+      int i = n;
+      while (i > 0 && sorted[i - 1] > x) {
+        sorted[i] = sorted[i - 1];
+        i--;
+      }
+      sorted[i] = x;
+      n++;
+      return (n & 1) == 1 ? sorted[n / 2] : (sorted[n / 2 - 1] + sorted[n / 2]) / 2;
+    }
+  }
+
+  private final Filter filters[]; // filters in the order they run
+
+  /**
+   * Constructs a chain of filters.
+   *
+   * @param filters filters in the order they run, none to pass samples unchanged
+   */
+  public FilterChain(Filter... filters) {
+    this.filters = filters;
+  }
+
+  /**
+   * Builds a chain from a description like "median:3,iir:0.3". Unknown or
+   * malformed entries are reported and left out.
+   *
+   * @param spec comma separated filters, empty for none
+   * @return the chain
+   */
+  public static FilterChain parse(String spec) {
+    List<Filter> filters = new ArrayList<>();
+    for (String entry : spec.split(",")) {
+      entry = entry.trim();
+      if (entry.isEmpty()) continue;
+      String parts[] = entry.split(":", 2);
+      String name = parts[0].trim().toLowerCase();
+      try {
+        String arg = parts.length > 1 ? parts[1].trim() : "";
+        if (name.equals("iir")) filters.add(new Iir(Float.parseFloat(arg)));
+        else if (name.equals("avg")) filters.add(new MovingAverage(Integer.parseInt(arg)));
+        else if (name.equals("median")) filters.add(new Median(Integer.parseInt(arg)));
+        else System.out.println("Unknown filter " + entry);
+      } catch (NumberFormatException e) {
+        System.out.println("Bad filter " + entry);
+      }
+    }
+    return new FilterChain(filters.toArray(new Filter[0]));
+  }
+
+  /**
+   * Filters one sample through every filter in turn.
+   *
+   * @param x the input
+   * @return the output of the last filter
+   */
+  public float apply(float x) {
+    for (Filter f : filters) x = f.apply(x);
+    return x;
+  }
+}
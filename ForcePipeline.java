@@ -0,0 +1,313 @@
+/**
+ * This class filters ADC voltages, turns them into pound forces and keeps
+ * everything the demo tracks about them: the offsets, the sensitivities, the
+ * pulls and high score, the chart window and the per tick average. It has no
+ * UI or hardware in it, so the same code runs on the live samples, in
+ * benchmarks and headless. The voltage filters of each axis are set with the
+ * filter setting, or filter.x, filter.y and filter.z (see FilterChain).
+ * An axis whose voltage is NaN, a dead ADC, reads 0 lbs and is left out of
+ * the combined force, so it can't start a pull that never ends.
+ *
+ * Every method must be called from the same thread.
+ */
+public class ForcePipeline {
+
+  public static final int X = 0; // x axis index
+  public static final int Y = 1; // y axis index
+  public static final int Z = 2; // z axis index
+  public static final int AXES = 3; // number of axes
+
+  private static final float DEFAULT_HIGH_SCORE = 50; // high score after zeroing in lbs
+
+  private final FilterChain filters[] = new FilterChain[AXES]; // voltage filters of each axis
+  private final float voltage[] = new float[AXES]; // newest filtered voltage of each axis
+  private final float offset[] = new float[AXES]; // voltage offset of each axis
+  private final float sensitivity[] = { 1400, 1400, 1400 }; // conversion factor of each axis (lb/V)
+  private final float pounds[] = new float[AXES]; // newest pound force of each axis
+  private float combined = 0; // newest total pound force
+  private float high_score = DEFAULT_HIGH_SCORE; // high score in lbs
+  private boolean zeroed = false; // are the forces zeroed
+  private boolean calibrated = false; // are the shunts calibrated
+  private final PullDetector pulls = new PullDetector(
+    Settings.getFloat("pull.onset.lbs", 10),
+    Settings.getFloat("pull.release.lbs", 5),
+    Settings.getInt("pull.hold.ms", 250),
+    Settings.getInt("pull.rfd.ms", 50)
+  ); // finds pulls in the combined force
+  private PullDetector.Pull last_pull = null; // newest finished pull
+  private long restarts = 0; // times the pull detection was restarted
+
+  private final SlidingWindow window; // every combined force sample shown on the chart
+  private final Decimator decimator = new Decimator(); // combined force reduced to the UI rate
+  private long start_time = -1; // timestamp of the first sample in ns
+  private double time_sec = 0; // time of the newest sample in seconds, double so it stays exact over a long day
+
+  /**
+   * Constructs a pipeline.
+   *
+   * @param window_capacity most samples kept for the chart
+   * @param window_duration seconds of samples kept for the chart
+   */
+  public ForcePipeline(int window_capacity, float window_duration) {
+    window = new SlidingWindow(window_capacity, window_duration);
+    String spec = Settings.getString("filter", "");
+    filters[X] = FilterChain.parse(Settings.getString("filter.x", spec));
+    filters[Y] = FilterChain.parse(Settings.getString("filter.y", spec));
+    filters[Z] = FilterChain.parse(Settings.getString("filter.z", spec));
+  }
+
+  /**
+   * Runs one sample through the filters, force and high score logic. The high score is
+   * judged once per pull, on its peak, when the pull ends.
+   *
+   * @param time timestamp of the sample in ns
+   * @param x voltage of the x axis, NaN if it has no reading
+   * @param y voltage of the y axis, NaN if it has no reading
+   * @param z voltage of the z axis, NaN if it has no reading
+   * @return true if the sample ended a pull that broke the high score
+   */
+  public boolean add(long time, float x, float y, float z) {
+    combined = 0;
+    addAxis(X, x);
+    addAxis(Y, y);
+    addAxis(Z, z);
+    decimator.add(combined);
+    if (start_time < 0) start_time = time;
+    time_sec = (time - start_time) / 1e9;
+    window.add(time_sec, combined);
+    PullDetector.Pull pull = pulls.add(time, combined);
+    if (pull == null) return false;
+    last_pull = pull;
+    if (pull.getPeak() > high_score && zeroed && calibrated) {
+      high_score = pull.getPeak();
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Filters the voltage of one axis and adds its force to the combined force.
+   * An axis without a reading keeps its last filtered voltage and reads 0 lbs.
+   *
+   * @param axis X, Y or Z
+   * @param volts voltage of the axis, NaN if it has no reading
+   */
+  private void addAxis(int axis, float volts) {
+    if (Float.isNaN(volts)) {
+      pounds[axis] = 0;
+      return;
+    }
+    voltage[axis] = filters[axis].apply(volts);
+    pounds[axis] = Math.abs(sensitivity[axis] * (voltage[axis] - offset[axis]));
+    combined += pounds[axis];
+  }
+
+  /**
+   * Zeroes every axis at its newest voltage and restarts the high score.
+   */
+  public void setOffsets() {
+    for (int i = 0; i < AXES; i++) offset[i] = voltage[i];
+    high_score = DEFAULT_HIGH_SCORE;
+    zeroed = true;
+    restartPulls();
+  }
+
+  /**
+   * Resets the offsets to 0 in all axes.
+   */
+  public void resetOffsets() {
+    zeroed = false;
+    for (int i = 0; i < AXES; i++) offset[i] = 0;
+    restartPulls();
+  }
+
+  /**
+   * Forgets the pull in progress, so a pull only counts if it starts after
+   * this. Zeroing and resetting the offsets do this, since the forces jump.
+   */
+  public void restartPulls() {
+    pulls.reset();
+    restarts++;
+  }
+
+  /**
+   * Returns how many times the pull detection was restarted.
+   *
+   * @return the number of restarts
+   */
+  public long getRestarts() {
+    return restarts;
+  }
+
+  /**
+   * Sets the sensitivities from the newest voltages, which should be read with
+   * the shunts applied.
+   *
+   * @param shunt_eq the shunt equivalent of each axis in lbs
+   */
+  public void calibrate(float[] shunt_eq) {
+    for (int i = 0; i < AXES; i++) {
+      sensitivity[i] = voltage[i] != 0 ? shunt_eq[i] / voltage[i] : 0;
+    }
+    calibrated = true;
+  }
+
+  /**
+   * Returns the newest filtered voltage of an axis.
+   *
+   * @param axis X, Y or Z
+   * @return the voltage
+   */
+  public float getVoltage(int axis) {
+    return voltage[axis];
+  }
+
+  /**
+   * Returns the voltage offset of an axis.
+   *
+   * @param axis X, Y or Z
+   * @return the offset
+   */
+  public float getOffset(int axis) {
+    return offset[axis];
+  }
+
+  /**
+   * Returns the sensitivity of an axis.
+   *
+   * @param axis X, Y or Z
+   * @return the sensitivity in lb/V
+   */
+  public float getSensitivity(int axis) {
+    return sensitivity[axis];
+  }
+
+  /**
+   * Sets the voltage offset of an axis.
+   *
+   * @param axis X, Y or Z
+   * @param offset the offset
+   */
+  public void setOffset(int axis, float offset) {
+    this.offset[axis] = offset;
+  }
+
+  /**
+   * Sets the sensitivity of an axis.
+   *
+   * @param axis X, Y or Z
+   * @param sensitivity the sensitivity in lb/V
+   */
+  public void setSensitivity(int axis, float sensitivity) {
+    this.sensitivity[axis] = sensitivity;
+  }
+
+  /**
+   * Returns the newest pound force of an axis.
+   *
+   * @param axis X, Y or Z
+   * @return the force in lbs
+   */
+  public float getPounds(int axis) {
+    return pounds[axis];
+  }
+
+  /**
+   * Returns the newest total pound force.
+   *
+   * @return the force in lbs
+   */
+  public float getCombined() {
+    return combined;
+  }
+
+  /**
+   * Returns the high score.
+   *
+   * @return the high score in lbs
+   */
+  public float getHighScore() {
+    return high_score;
+  }
+
+  /**
+   * Sets the high score.
+   *
+   * @param high_score the high score in lbs
+   */
+  public void setHighScore(float high_score) {
+    this.high_score = high_score;
+  }
+
+  /**
+   * Returns the newest finished pull.
+   *
+   * @return the pull, null before the first one ends
+   */
+  public PullDetector.Pull getLastPull() {
+    return last_pull;
+  }
+
+  /**
+   * Returns whether the forces are zeroed.
+   *
+   * @return true after setOffsets() until resetOffsets()
+   */
+  public boolean isZeroed() {
+    return zeroed;
+  }
+
+  /**
+   * Returns whether the sensitivities are calibrated.
+   *
+   * @return true after calibrate()
+   */
+  public boolean isCalibrated() {
+    return calibrated;
+  }
+
+  /**
+   * Sets whether the forces are zeroed.
+   *
+   * @param zeroed true if the offsets are set
+   */
+  public void setZeroed(boolean zeroed) {
+    this.zeroed = zeroed;
+  }
+
+  /**
+   * Sets whether the sensitivities are calibrated.
+   *
+   * @param calibrated true if the sensitivities are set
+   */
+  public void setCalibrated(boolean calibrated) {
+    this.calibrated = calibrated;
+  }
+
+  /**
+   * Returns the window of combined force samples shown on the chart.
+   *
+   * @return the window
+   */
+  public SlidingWindow getWindow() {
+    return window;
+  }
+
+  /**
+   * Returns the decimator averaging the combined force between UI ticks.
+   *
+   * @return the decimator
+   */
+  public Decimator getDecimator() {
+    return decimator;
+  }
+
+  /**
+   * Returns the time of the newest sample since the first one.
+   *
+   * @return the time in seconds
+   */
+  public double getTime() {
+    return time_sec;
+  }
+}
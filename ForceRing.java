@@ -0,0 +1,135 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is a single-producer/single-consumer ring buffer of the forces
+ * the station's ForcePipeline computed for each sample. The JavaFX thread
+ * offers them after running a sample through the pipeline and a
+ * SampleStream's thread polls them, without locks or allocation, so the
+ * recording and the telemetry carry the same forces and high scores the
+ * screen and the LEDs show.
+ */
+public class ForceRing {
+
+  private static final int VALUES = ForcePipeline.AXES + 2; // pounds of each axis, combined force and high score
+
+  private final int mask; // index mask, capacity is a power of two
+  private final long times[]; // sample timestamps from System.nanoTime()
+  private final float values[]; // VALUES forces per sample
+  private final boolean high_scores[]; // did the sample set a new high score
+  private final AtomicLong head = new AtomicLong(); // next slot to read
+  private final AtomicLong tail = new AtomicLong(); // next slot to write
+  private final AtomicLong dropped = new AtomicLong(); // forces lost because the ring was full
+  private long polledTime = 0; // timestamp of the last polled forces
+  private final float polled[] = new float[VALUES]; // last polled forces
+  private boolean polledHighScore = false; // did the last polled sample set a new high score
+
+  /**
+   * Constructs a ring that holds at least the requested number of samples.
+   *
+   * @param capacity minimum number of samples, rounded up to a power of two
+   */
+  public ForceRing(int capacity) {
+    int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+    mask = size - 1;
+    times = new long[size];
+    values = new float[size * VALUES];
+    high_scores = new boolean[size];
+  }
+
+  /**
+   * Adds the newest forces of a pipeline. Only the producer thread may call this.
+   *
+   * @param time timestamp of the sample in ns
+   * @param forces pipeline that just took the sample
+   * @param high_score did the sample set a new high score
+   * @return false if the ring was full and the forces were dropped
+   */
+  public boolean offer(long time, ForcePipeline forces, boolean high_score) {
+    long t = tail.get();
+    if (t - head.get() > mask) {
+      dropped.incrementAndGet();
+      return false;
+    }
+    int slot = (int) t & mask;
+    times[slot] = time;
+    values[slot * VALUES] = forces.getPounds(ForcePipeline.X);
+    values[slot * VALUES + 1] = forces.getPounds(ForcePipeline.Y);
+    values[slot * VALUES + 2] = forces.getPounds(ForcePipeline.Z);
+    values[slot * VALUES + 3] = forces.getCombined();
+    values[slot * VALUES + 4] = forces.getHighScore();
+    high_scores[slot] = high_score;
+    tail.lazySet(t + 1); // publish the slot
+    return true;
+  }
+
+  /**
+   * Removes the oldest forces. Only the consumer thread may call this.
+   *
+   * @return false if the ring was empty
+   */
+  public boolean poll() {
+    long h = head.get();
+    if (h == tail.get()) return false;
+    int slot = (int) h & mask;
+    polledTime = times[slot];
+    System.arraycopy(values, slot * VALUES, polled, 0, VALUES);
+    polledHighScore = high_scores[slot];
+    head.lazySet(h + 1); // hand the slot back to the producer
+    return true;
+  }
+
+  /**
+   * Returns the timestamp of the forces returned by the last poll().
+   *
+   * @return the timestamp in ns
+   */
+  public long getPolledTime() {
+    return polledTime;
+  }
+
+  /**
+   * Returns the pound force of an axis returned by the last poll().
+   *
+   * @param axis X, Y or Z
+   * @return the force in lbs
+   */
+  public float getPolledPounds(int axis) {
+    return polled[axis];
+  }
+
+  /**
+   * Returns the total pound force returned by the last poll().
+   *
+   * @return the force in lbs
+   */
+  public float getPolledCombined() {
+    return polled[3];
+  }
+
+  /**
+   * Returns the high score after the sample returned by the last poll().
+   *
+   * @return the high score in lbs
+   */
+  public float getPolledHighScore() {
+    return polled[4];
+  }
+
+  /**
+   * Returns whether the sample returned by the last poll() set a new high score.
+   *
+   * @return true if it ended a pull that broke the high score
+   */
+  public boolean isPolledNewHighScore() {
+    return polledHighScore;
+  }
+
+  /**
+   * Returns the number of forces dropped because the consumer fell behind.
+   *
+   * @return the number of dropped forces
+   */
+  public long getDropped() {
+    return dropped.get();
+  }
+}
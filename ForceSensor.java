@@ -0,0 +1,88 @@
+import java.io.*;
+
+/**
+ * This interface is a force sensor ADC. The pi4j backend is an MCP342x on the
+ * I2C bus, the simulated backend generates force waveforms.
+ */
+public interface ForceSensor {
+
+  /**
+   * Starts a conversion on several sensors at once, e.g. an I2C general call.
+   */
+  interface Latch {
+    /**
+     * Starts a conversion on every one-shot sensor sharing the latch.
+     *
+     * @throws IOException if the write fails
+     */
+    void latch() throws IOException;
+  }
+
+  /**
+   * Writes the configuration to the sensor. In continuous mode this only has
+   * to be done once.
+   *
+   * @throws IOException if the write fails
+   */
+  void configure() throws IOException;
+
+  /**
+   * Opens the sensor again after it stopped answering and writes the
+   * configuration.
+   *
+   * @throws IOException if the sensor still doesn't answer
+   */
+  void reopen() throws IOException;
+
+  /**
+   * Starts a single conversion. Only needed in one-shot mode.
+   *
+   * @throws IOException if the write fails
+   */
+  void startConversion() throws IOException;
+
+  /**
+   * Returns whether each conversion has to be started.
+   *
+   * @return true in one-shot mode, false in continuous mode
+   */
+  boolean isOneShot();
+
+  /**
+   * Reads the sensor once without waiting, so one thread can poll several
+   * sensors in turn while their conversions run.
+   *
+   * @return true if a new conversion was read, false if it isn't ready yet
+   * @throws IOException if the read fails
+   */
+  boolean poll() throws IOException;
+
+  /**
+   * Returns the last conversion in ADC counts.
+   *
+   * @return the raw conversion
+   */
+  int getRaw();
+
+  /**
+   * Returns the last conversion in volts.
+   *
+   * @return the voltage
+   */
+  float getVoltage();
+
+  /**
+   * Converts ADC counts to volts for this sensor's resolution and gain.
+   *
+   * @param counts conversion in ADC counts
+   * @return the voltage
+   */
+  float toVoltage(int counts);
+
+  /**
+   * Returns the time one conversion takes.
+   *
+   * @return the conversion period in ns
+   */
+  long getConversionTime();
+}
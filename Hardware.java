@@ -0,0 +1,74 @@
+import java.io.*;
+
+/**
+ * This interface is the hardware the demo runs on: the force sensor ADCs,
+ * the LED strips and the bells of every station. The pi4j backend talks to a Raspberry Pi, the
+ * simulated backend runs anywhere so the pipeline can be load-tested and profiled.
+ */
+public interface Hardware {
+
+  /**
+   * Opens the backend selected by the hardware setting ("pi4j" or "sim").
+   *
+   * @return the hardware
+   * @throws IOException if the hardware can't be opened
+   */
+  static Hardware create() throws IOException {
+    String backend = Settings.getString("hardware", "pi4j");
+    if (backend.equals("sim")) return new SimulatedHardware();
+    return new Pi4jHardware();
+  }
+
+  /**
+   * Returns a force sensor ADC.
+   *
+   * @param bus i2c bus of the ADC
+   * @param address i2c address of the ADC
+   * @param config ADC configuration command
+   * @return the sensor
+   * @throws IOException if the sensor can't be opened
+   */
+  ForceSensor getSensor(int bus, int address, byte config) throws IOException;
+
+  /**
+   * Returns the executor that runs every transaction of an I2C bus, so a
+   * sampler can batch the transactions of one sample.
+   *
+   * @param bus i2c bus number
+   * @return the executor, or null if the backend has no real bus
+   * @throws IOException if the bus can't be opened
+   */
+  I2cBusExecutor getBusExecutor(int bus) throws IOException;
+
+  /**
+   * Returns a latch that starts a conversion on every one-shot sensor of a bus at once.
+   *
+   * @param bus i2c bus of the sensors
+   * @return the latch, or null if the backend has none
+   * @throws IOException if the latch can't be opened
+   */
+  ForceSensor.Latch getLatch(int bus) throws IOException;
+
+  /**
+   * Returns an LED strip.
+   *
+   * @param chip_select SPI chip select of the strip
+   * @param num_leds number of LEDs on the strip
+   * @return the strip
+   * @throws IOException if the strip can't be opened
+   */
+  LedStrip getLedStrip(int chip_select, int num_leds) throws IOException;
+
+  /**
+   * Returns a bell output. Asking for the same pin twice gives the same bell.
+   *
+   * @param pin GPIO pin of the bell (wiringPi numbering)
+   * @return the bell
+   */
+  BellOutput getBell(int pin);
+
+  /**
+   * Releases the hardware.
+   */
+  void close();
+}
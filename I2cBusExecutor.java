@@ -0,0 +1,394 @@
+import com.pi4j.io.i2c.I2CBus;
+import com.pi4j.io.i2c.I2CDevice;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class owns one I2C bus. Every transaction on the bus runs on the
+ * bus's own thread, so the drivers of different devices (the ADCs, a
+ * temperature sensor) can share the bus without their transfers
+ * interleaving. Drivers get a Device for each address, whose writes, reads
+ * and write-then-reads are handed to the bus thread.
+ *
+ * Transactions that belong to the same cycle, e.g. reading every ADC of a
+ * sample, are submitted as one Batch. The bus thread runs the whole batch
+ * back to back after a single wakeup, and the Device calls made inside it go
+ * straight to the bus. Batches queued by several threads at once are run in
+ * one pass. How long each kind of transaction holds the bus, and how long
+ * batches wait for it, is kept in histograms for tuning.
+ *
+ * Nothing waits on the bus forever. Each transfer is bounded by the
+ * kernel's adapter timeout, and a caller gives up on a batch that hasn't
+ * finished by its deadline. A batch that timed out while queued is never
+ * run; one that is still running makes its caller's next batch fail at
+ * once, so a caller never has two batches on the bus.
+ */
+public class I2cBusExecutor implements Runnable {
+
+  /**
+   * Transactions run together on the bus thread.
+   */
+  public interface Batch {
+    /**
+     * Runs the transactions. Device calls made here go straight to the bus.
+     *
+     * @throws IOException if a transaction fails
+     */
+    void run() throws IOException;
+  }
+
+  /**
+   * What is timed.
+   */
+  public enum Kind {
+    WRITE("write"),
+    READ("read"),
+    WRITE_READ("write+read"),
+    QUEUE("queue wait");
+
+    private final String label; // name in the report
+
+    Kind(String label) {
+      this.label = label;
+    }
+  }
+
+  /**
+   * One device on the bus.
+   */
+  public class Device {
+
+    private volatile I2CDevice device; // pi4j device at the address
+
+    private Device(I2CDevice device) {
+      this.device = device;
+    }
+
+    /**
+     * Opens the device again through the bus, e.g. after it stopped
+     * answering. Later transactions use the new handle.
+     *
+     * @throws IOException if the device can't be opened
+     */
+    public void reopen() throws IOException {
+      device = bus.getDevice(device.getAddress());
+    }
+
+    /**
+     * Returns the device's address.
+     *
+     * @return the i2c address
+     */
+    public int getAddress() {
+      return device.getAddress();
+    }
+
+    /**
+     * Writes one byte.
+     *
+     * @param b the byte
+     * @throws IOException if the write fails
+     */
+    public void write(byte b) throws IOException {
+      if (Thread.currentThread() != thread) {
+        run(() -> write(b));
+        return;
+      }
+      long start = System.nanoTime();
+      device.write(b);
+      histograms[Kind.WRITE.ordinal()].record(System.nanoTime() - start);
+    }
+
+    /**
+     * Reads bytes.
+     *
+     * @param buffer where the bytes go
+     * @param offset position of the first byte in buffer
+     * @param size number of bytes to read
+     * @return the number of bytes read
+     * @throws IOException if the read fails
+     */
+    public int read(byte[] buffer, int offset, int size) throws IOException {
+      if (Thread.currentThread() != thread) {
+        int n[] = new int[1];
+        run(() -> n[0] = read(buffer, offset, size));
+        return n[0];
+      }
+      long start = System.nanoTime();
+      int n = device.read(buffer, offset, size);
+      histograms[Kind.READ.ordinal()].record(System.nanoTime() - start);
+      return n;
+    }
+
+    /**
+     * Writes bytes, then reads bytes without releasing the bus in between,
+     * e.g. to select a register and read it.
+     *
+     * @param out bytes to write
+     * @param out_offset position of the first byte in out
+     * @param out_size number of bytes to write
+     * @param in where the read bytes go
+     * @param in_offset position of the first byte in in
+     * @param in_size number of bytes to read
+     * @return the number of bytes read
+     * @throws IOException if the transfer fails
+     */
+    public int writeRead(byte[] out, int out_offset, int out_size, byte[] in, int in_offset, int in_size)
+      throws IOException {
+      if (Thread.currentThread() != thread) {
+        int n[] = new int[1];
+        run(() -> n[0] = writeRead(out, out_offset, out_size, in, in_offset, in_size));
+        return n[0];
+      }
+      long start = System.nanoTime();
+      int n = device.read(out, out_offset, out_size, in, in_offset, in_size);
+      histograms[Kind.WRITE_READ.ordinal()].record(System.nanoTime() - start);
+      return n;
+    }
+  }
+
+  /**
+   * A batch waiting for the bus. Each calling thread reuses its own.
+   */
+  private static class Request {
+
+    private final Thread caller; // thread waiting for the batch
+    private final AtomicInteger state = new AtomicInteger(DONE); // QUEUED, RUNNING, DONE or CANCELLED
+    private Batch batch = null; // transactions to run
+    private long queued = 0; // time the batch was queued in ns
+    private IOException error = null; // why the batch failed
+
+    Request(Thread caller) {
+      this.caller = caller;
+    }
+  }
+
+  private static final int QUEUED = 0; // batch waiting for the bus
+  private static final int RUNNING = 1; // batch on the bus
+  private static final int DONE = 2; // batch finished, the request can be reused
+  private static final int CANCELLED = 3; // batch timed out before it ran
+
+  private static final int QUEUE_SIZE = 64; // most batches waiting for the bus
+  private static final long I2C_TIMEOUT = 0x0702; // ioctl that sets the adapter's transfer timeout in 10 ms units
+
+  private final I2CBus bus; // the bus
+  private final long timeout; // longest wait for a batch in ns
+  private final AtomicLong timeouts = new AtomicLong(); // batches given up on
+  private final ArrayBlockingQueue<Request> queue = new ArrayBlockingQueue<>(QUEUE_SIZE); // batches waiting for the bus
+  private final List<Request> pass = new ArrayList<>(QUEUE_SIZE); // batches run in the current pass, only touched by the bus thread
+  private final ThreadLocal<Request> requests = ThreadLocal.withInitial(() -> new Request(Thread.currentThread())); // request of each calling thread
+  private final LatencyHistogram histograms[] = new LatencyHistogram[Kind.values().length]; // time per kind
+  private long batches = 0; // batches run, only touched by the bus thread
+  private long passes = 0; // wakeups that ran batches, only touched by the bus thread
+  private volatile boolean running = false; // is the thread running batches
+  private Thread thread; // bus thread
+
+  /**
+   * Constructs an executor for a bus and sets the kernel's transfer timeout
+   * of the bus. Call start() before using its devices.
+   *
+   * @param bus the bus, closed by close()
+   * @param timeout_ms longest time a transfer or a caller waits for the bus
+   */
+  public I2cBusExecutor(I2CBus bus, long timeout_ms) {
+    this.bus = bus;
+    this.timeout = timeout_ms * 1000000L;
+    for (int i = 0; i < histograms.length; i++) histograms[i] = new LatencyHistogram();
+    try {
+      bus.getDevice(Mcp342x.GENERAL_CALL_ADDRESS).ioctl(I2C_TIMEOUT, (int) Math.max(1, (timeout_ms + 9) / 10));
+    } catch (IOException e) {
+      System.out.println("Could not set I2C bus " + bus.getBusNumber() + " timeout: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Starts the bus thread.
+   */
+  public void start() {
+    running = true;
+    thread = new Thread(this, "i2c-bus-" + bus.getBusNumber());
+    thread.setDaemon(true);
+    thread.setPriority(Thread.MAX_PRIORITY);
+    thread.start();
+  }
+
+  /**
+   * Returns a device on the bus.
+   *
+   * @param address i2c address of the device
+   * @return the device
+   * @throws IOException if the device can't be opened
+   */
+  public Device getDevice(int address) throws IOException {
+    return new Device(bus.getDevice(address));
+  }
+
+  /**
+   * Runs a batch of transactions on the bus thread and waits for it until
+   * the timeout. Called on the bus thread, e.g. from inside another batch,
+   * it runs right away.
+   *
+   * @param batch the transactions
+   * @throws IOException if a transaction fails, the batch timed out, the
+   *                     caller's last batch is still running or the bus is closed
+   */
+  public void run(Batch batch) throws IOException {
+    if (Thread.currentThread() == thread) {
+      batch.run();
+      return;
+    }
+    if (!running) throw new IOException("I2C bus " + bus.getBusNumber() + " is closed");
+    Request request = requests.get();
+    if (request.state.get() == RUNNING) throw new IOException(
+      "I2C bus " + bus.getBusNumber() + " is still running a batch that timed out"
+    );
+    request.batch = batch;
+    request.error = null;
+    request.queued = System.nanoTime();
+    request.state.set(QUEUED);
+    long deadline = request.queued + timeout;
+    try {
+      if (!queue.offer(request, timeout, TimeUnit.NANOSECONDS)) {
+        request.state.set(DONE);
+        timeouts.incrementAndGet();
+        throw new IOException("I2C bus " + bus.getBusNumber() + " queue is full");
+      }
+    } catch (InterruptedException e) {
+      request.state.set(DONE);
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted waiting for I2C bus " + bus.getBusNumber());
+    }
+    while (request.state.get() != DONE) {
+      long left = deadline - System.nanoTime();
+      if (left > 0) {
+        LockSupport.parkNanos(this, left);
+        continue;
+      }
+      if (request.state.compareAndSet(QUEUED, CANCELLED)) {
+        requests.remove(); // the cancelled request stays in the queue
+      } else if (request.state.get() != RUNNING) {
+        continue; // finished just now
+      }
+      timeouts.incrementAndGet();
+      throw new IOException("I2C bus " + bus.getBusNumber() + " timed out");
+    }
+    request.batch = null;
+    if (request.error != null) throw request.error;
+  }
+
+  /**
+   * Runs every queued batch after each wakeup until closed.
+   */
+  @Override
+  public void run() {
+    while (running) {
+      Request first;
+      try {
+        first = queue.poll(100, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        continue;
+      }
+      if (first == null) continue;
+      pass.add(first);
+      queue.drainTo(pass);
+      passes++;
+      for (Request request : pass) {
+        if (!request.state.compareAndSet(QUEUED, RUNNING)) continue; // timed out while queued
+        histograms[Kind.QUEUE.ordinal()].record(System.nanoTime() - request.queued);
+        try {
+          request.batch.run();
+        } catch (IOException e) {
+          request.error = e;
+        } catch (RuntimeException e) {
+          request.error = new IOException(e);
+        }
+        batches++;
+        request.state.set(DONE);
+        LockSupport.unpark(request.caller);
+      }
+      pass.clear();
+    }
+    // fail whatever is still queued
+    Request request;
+    while ((request = queue.poll()) != null) {
+      if (!request.state.compareAndSet(QUEUED, RUNNING)) continue;
+      request.error = new IOException("I2C bus " + bus.getBusNumber() + " is closed");
+      request.state.set(DONE);
+      LockSupport.unpark(request.caller);
+    }
+  }
+
+  /**
+   * Returns the timing of one kind of transaction.
+   *
+   * @param kind the kind
+   * @return the histogram in ns
+   */
+  public LatencyHistogram getHistogram(Kind kind) {
+    return histograms[kind.ordinal()];
+  }
+
+  /**
+   * Returns how many batches callers gave up on.
+   *
+   * @return the number of timeouts
+   */
+  public long getTimeouts() {
+    return timeouts.get();
+  }
+
+  /**
+   * Returns a table of the transaction times and how well batches are merged.
+   *
+   * @return the report
+   */
+  public String report() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format("%-15s %8s %8s %8s %8s%n", "i2c bus " + bus.getBusNumber(), "p50 us", "p99 us", "max us", "count"));
+    for (Kind kind : Kind.values()) {
+      LatencyHistogram h = histograms[kind.ordinal()];
+      sb.append(
+        String.format(
+          "%-15s %8.1f %8.1f %8.1f %8d%n",
+          kind.label,
+          h.getPercentile(50) / 1e3,
+          h.getPercentile(99) / 1e3,
+          h.getMax() / 1e3,
+          h.getCount()
+        )
+      );
+    }
+    sb.append(
+      String.format(
+        "batches %d, batches per wakeup %.2f, timeouts %d",
+        batches,
+        passes > 0 ? (double) batches / passes : 0,
+        timeouts.get()
+      )
+    );
+    return sb.toString();
+  }
+
+  /**
+   * Stops the bus thread, fails the batches still queued and closes the bus.
+   */
+  public void close() {
+    running = false;
+    if (thread != null) {
+      thread.interrupt();
+      try {
+        thread.join(1000);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    try {
+      bus.close();
+    } catch (IOException e) {}
+  }
+}
@@ -0,0 +1,96 @@
+import javafx.scene.control.Label;
+
+/**
+ * This class shows a fixed-precision number on a Label. The number is
+ * rendered into a reused char buffer instead of going through
+ * String.format, and the label's text is only replaced when the value
+ * changes at the shown precision, so a steady reading causes no CSS or
+ * layout passes. A minimum time between updates can be set for labels
+ * that would otherwise flicker, e.g. noisy voltages.
+ */
+public class LabelFormatter {
+
+  private static final long POWERS[] = { 1, 10, 100, 1000, 10000, 100000, 1000000 }; // scale for each precision
+
+  private final Label label; // label showing the value
+  private final int decimals; // digits after the decimal point
+  private final String suffix; // unit shown after the value
+  private final long min_interval; // least time between updates in ns
+  private final char buf[] = new char[32]; // text being built
+  private long shown = Long.MIN_VALUE; // value shown, scaled by 10^decimals
+  private long last_update = 0; // time of the last update in ns
+
+  /**
+   * Constructs a formatter for a label.
+   *
+   * @param label label to show the value on
+   * @param decimals digits after the decimal point, 0 to 6
+   * @param suffix unit shown after the value, e.g. "lbf "
+   * @param min_interval_ms least time between updates in ms, 0 for none
+   */
+  public LabelFormatter(Label label, int decimals, String suffix, long min_interval_ms) {
+    this.label = label;
+    this.decimals = Math.max(0, Math.min(decimals, POWERS.length - 1));
+    this.suffix = suffix;
+    this.min_interval = min_interval_ms * 1000000L;
+  }
+
+  /**
+   * Shows a value if it differs from the shown one at the label's precision
+   * and the minimum time between updates has passed. A change held back by
+   * the interval is shown by a later call.
+   *
+   * @param value the value
+   */
+  public void set(float value) {
+    long scaled = Math.round(value * (double) POWERS[decimals]);
+    if (scaled == shown) return;
+    long now = System.nanoTime();
+    if (shown != Long.MIN_VALUE && now - last_update < min_interval) return;
+    shown = scaled;
+    last_update = now;
+    label.setText(new String(buf, 0, render(scaled)));
+  }
+
+  /**
+   * Renders a scaled value and the suffix into the buffer.
+   *
+   * @param scaled value times 10^decimals
+   * @return the number of chars written
+   */
+  private int render(long scaled) {
+    int len = 0;
+    if (scaled < 0) {
+      buf[len++] = '-';
+      scaled = -scaled;
+    }
+    long whole = scaled / POWERS[decimals];
+    long frac = scaled % POWERS[decimals];
+
+    // whole part, most significant digit first
+    int start = len;
+    do {
+      buf[len++] = (char) ('0' + whole % 10);
+      whole /= 10;
+    } while (whole > 0 && len < buf.length - decimals - suffix.length() - 1);
+    for (int i = start, j = len - 1; i < j; i++, j--) {
+      char c = buf[i];
+      buf[i] = buf[j];
+      buf[j] = c;
+    }
+
+    // fraction, padded with leading zeros
+    if (decimals > 0) {
+      buf[len++] = '.';
+      for (int d = decimals - 1; d >= 0; d--) {
+        buf[len + d] = (char) ('0' + frac % 10);
+        frac /= 10;
+      }
+      len += decimals;
+    }
+
+    int n = Math.min(suffix.length(), buf.length - len);
+    suffix.getChars(0, n, buf, len);
+    return len + n;
+  }
+}
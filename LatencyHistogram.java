@@ -0,0 +1,94 @@
+import java.util.concurrent.atomic.*;
+
+/**
+ * This class is a lock-free histogram of durations in ns. Buckets are
+ * log-linear like HdrHistogram: every power of two is split into 32 linear
+ * sub-buckets, so any value is reported within about 3% while the whole
+ * range of a long fits in a fixed array. Any thread may record at the same
+ * time without allocation; readers see a slightly moving snapshot.
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BITS = 6; // values below 2^SUB_BITS get their own bucket
+  private static final int SUB_COUNT = 1 << SUB_BITS; // buckets below the first split
+  private static final int HALF_COUNT = SUB_COUNT / 2; // sub-buckets per power of two
+  private static final int BUCKETS = (64 - SUB_BITS) * HALF_COUNT + SUB_COUNT; // enough for any positive long
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS); // values recorded in each bucket
+  private final AtomicLong total = new AtomicLong(); // values recorded
+  private final AtomicLong max = new AtomicLong(); // largest value recorded
+
+  /**
+   * Records one value. Negative values are recorded as 0.
+   *
+   * @param value duration in ns
+   */
+  public void record(long value) {
+    if (value < 0) value = 0;
+    counts.incrementAndGet(indexOf(value));
+    total.incrementAndGet();
+    long m = max.get();
+    while (value > m && !max.compareAndSet(m, value)) m = max.get();
+  }
+
+  /**
+   * Returns the value at a percentile.
+   *
+   * @param percentile percentile between 0 and 100
+   * @return the largest value in the bucket holding the percentile, 0 if empty
+   */
+  public long getPercentile(double percentile) {
+    long n = total.get();
+    if (n == 0) return 0;
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts.get(i);
+      if (seen >= rank) return Math.min(highestOf(i), max.get());
+    }
+    return max.get();
+  }
+
+  /**
+   * Returns the largest value recorded.
+   *
+   * @return the maximum in ns
+   */
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * Returns the number of values recorded.
+   *
+   * @return the count
+   */
+  public long getCount() {
+    return total.get();
+  }
+
+  /**
+   * Returns the bucket of a value.
+   *
+   * @param value a value of at least 0
+   * @return the bucket index
+   */
+  private static int indexOf(long value) {
+    if (value < SUB_COUNT) return (int) value;
+    int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BITS; // keeps the top SUB_BITS bits
+    return shift * HALF_COUNT + (int) (value >>> shift);
+  }
+
+  /**
+   * Returns the largest value that falls in a bucket.
+   *
+   * @param index bucket index
+   * @return the largest value of the bucket
+   */
+  private static long highestOf(int index) {
+    if (index < SUB_COUNT) return index;
+    int shift = index / HALF_COUNT - 1;
+    long sub = index - shift * HALF_COUNT;
+    return ((sub + 1) << shift) - 1;
+  }
+}
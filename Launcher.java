@@ -1,5 +1,39 @@
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
 public class Launcher {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--cds-train")) {
+            train(args.length > 1 ? args[1] : "armdemo.jsa");
+            return;
+        }
         Main.main(args);
     }
+
+    /**
+     * Starts the demo once in a child JVM that quits right after startup and
+     * dumps every class it loaded into a shared archive. Later starts with
+     * -XX:SharedArchiveFile load the JVM and JavaFX classes from the archive.
+     *
+     * @param archive the archive to write
+     * @throws Exception if the child JVM can't be started
+     */
+    private static void train(String archive) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-XX:ArchiveClassesAtExit=" + archive);
+        command.add("-Darmdemo.exit.after.startup=true");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("Launcher");
+        int status = new ProcessBuilder(command).inheritIO().start().waitFor();
+        if (status != 0) {
+            System.out.println("Training run failed with status " + status);
+            return;
+        }
+        System.out.println("Wrote " + archive + ", start with -XX:SharedArchiveFile=" + archive);
+    }
 }
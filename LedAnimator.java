@@ -0,0 +1,222 @@
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class renders LED animations on its own thread at a capped frame rate.
+ * Other threads only hand it animation commands, so a long light show never
+ * blocks the UI or the sampling.
+ *
+ * A background animation (e.g. the force bar) runs whenever nothing else is
+ * playing. Played animations (e.g. the rainbow flash) preempt the background
+ * and any animation already playing, and the background resumes when they end.
+ *
+ * Several animators can share one render thread, e.g. one per station's strip.
+ * The thread runs whichever strip's frame is due first, so the SPI frames of
+ * the strips interleave at each strip's own frame rate.
+ */
+public class LedAnimator {
+
+  /**
+   * One animation on the LED strip.
+   */
+  public interface Animation {
+    /**
+     * Draws one frame. The strip is shown after this returns.
+     *
+     * @param strip strip to draw on
+     * @param frame number of frames drawn before this one
+     * @return false when the animation is finished and nothing was drawn
+     */
+    boolean render(LedStrip strip, long frame);
+  }
+
+  private final LedStrip strip; // strip owned by the render thread
+  private final long period; // time between frames in ns
+  private final ScheduledExecutorService executor; // render thread
+  private final boolean owns_executor; // is the render thread this animator's own
+  private ScheduledFuture<?> rendering = null; // the scheduled frames
+  private final AtomicReference<Animation> pending = new AtomicReference<>(); // animation waiting to start
+  private volatile Animation background = null; // animation shown when nothing is playing
+  private volatile Runnable frameListener = null; // told after every frame is sent
+  private Animation playing = null; // animation currently playing
+  private long frame = 0; // frame of the playing animation
+  private boolean failed = false; // did the last write fail
+  private boolean crashed = false; // did the last frame throw
+
+  /**
+   * Constructs an animator. Once started, only the render thread may touch the strip.
+   *
+   * @param strip strip to draw on
+   * @param fps most frames per second
+   */
+  public LedAnimator(LedStrip strip, float fps) {
+    this(strip, fps, newRenderThread(), true);
+  }
+
+  /**
+   * Constructs an animator that renders on a shared render thread. Once
+   * started, only that thread may touch the strip.
+   *
+   * @param strip strip to draw on
+   * @param fps most frames per second
+   * @param render_thread render thread from newRenderThread(), shut down by its owner
+   */
+  public LedAnimator(LedStrip strip, float fps, ScheduledExecutorService render_thread) {
+    this(strip, fps, render_thread, false);
+  }
+
+  private LedAnimator(LedStrip strip, float fps, ScheduledExecutorService executor, boolean owns_executor) {
+    this.strip = strip;
+    this.period = (long) (1e9 / fps);
+    this.executor = executor;
+    this.owns_executor = owns_executor;
+  }
+
+  /**
+   * Creates a render thread that can be shared by several animators.
+   *
+   * @return the render thread
+   */
+  public static ScheduledExecutorService newRenderThread() {
+    return Executors.newSingleThreadScheduledExecutor(
+      r -> {
+        Thread t = new Thread(r, "led-render");
+        t.setDaemon(true);
+        return t;
+      }
+    );
+  }
+
+  /**
+   * Starts rendering frames.
+   */
+  public void start() {
+    rendering = executor.scheduleAtFixedRate(this::renderFrame, 0, period, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Stops rendering and turns the strip off.
+   *
+   * @throws InterruptedException if the current thread is interrupted
+   */
+  public void stop() throws InterruptedException {
+    if (owns_executor) {
+      executor.shutdown();
+      executor.awaitTermination(1, TimeUnit.SECONDS);
+    } else if (rendering != null) {
+      rendering.cancel(false);
+      // wait for a frame that is being drawn, the render thread runs tasks in order
+      try {
+        executor.submit(() -> {}).get(1, TimeUnit.SECONDS);
+      } catch (ExecutionException | TimeoutException | RejectedExecutionException e) {}
+    }
+    try {
+      strip.clear();
+      strip.show();
+    } catch (IOException e) {
+      System.out.println("LED strip not responding");
+    }
+  }
+
+  /**
+   * Sets the animation shown whenever nothing else is playing.
+   *
+   * @param animation the background animation, null for a dark strip
+   */
+  public void setBackground(Animation animation) {
+    background = animation;
+  }
+
+  /**
+   * Sets a listener that runs on the render thread after each frame is sent
+   * to the strip, e.g. to time when a change became visible.
+   *
+   * @param listener the listener, null for none
+   */
+  public void setFrameListener(Runnable listener) {
+    frameListener = listener;
+  }
+
+  /**
+   * Plays an animation in front of the background, replacing whatever is playing.
+   *
+   * @param animation the animation to play
+   */
+  public void play(Animation animation) {
+    pending.set(animation);
+  }
+
+  /**
+   * Returns whether an animation other than the background is playing.
+   *
+   * @return true while an animation is playing or waiting to start
+   */
+  public boolean isPlaying() {
+    return playing != null || pending.get() != null;
+  }
+
+  /**
+   * Draws and shows one frame. Runs on the render thread. An exception from
+   * an animation or the frame listener would cancel the scheduled task and
+   * freeze the strip for good, so it drops the played animation, is printed
+   * once and the next frame is rendered as usual.
+   */
+  private void renderFrame() {
+    try {
+      drawFrame();
+      crashed = false;
+    } catch (RuntimeException e) {
+      playing = null;
+      if (!crashed) System.out.println("LED animation failed: " + e);
+      crashed = true;
+    }
+  }
+
+  /**
+   * Draws and shows one frame.
+   */
+  private void drawFrame() {
+    Animation next = pending.getAndSet(null);
+    if (next != null) {
+      playing = next;
+      frame = 0;
+    }
+    if (playing != null && !playing.render(strip, frame++)) playing = null;
+    if (playing == null) {
+      Animation bg = background;
+      if (bg != null) bg.render(strip, 0);
+      else strip.clear();
+    }
+    try {
+      strip.show();
+      failed = false;
+      Runnable listener = frameListener;
+      if (listener != null) listener.run();
+    } catch (IOException e) {
+      if (!failed) System.out.println("LED strip not responding");
+      failed = true;
+    }
+  }
+
+  /**
+   * Returns an animation that flashes random colors on every LED.
+   *
+   * @param num_leds number of LEDs to light
+   * @param frames number of frames to flash for
+   * @return the rainbow animation
+   */
+  public static Animation rainbow(int num_leds, int frames) {
+    return (strip, frame) -> {
+      if (frame >= frames) return false;
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      for (int i = 0; i < num_leds; i++) strip.setPixelColor(
+        i,
+        random.nextInt(255),
+        random.nextInt(255),
+        random.nextInt(255)
+      );
+      return true;
+    };
+  }
+}
@@ -0,0 +1,53 @@
+import java.io.*;
+
+/**
+ * This interface is an addressable LED strip. The pi4j backend is a DotStar
+ * strip on SPI, the simulated backend records the frames it is sent.
+ */
+public interface LedStrip {
+
+  /**
+   * Sets all pixels to OFF.
+   */
+  void clear();
+
+  /**
+   * Sets specified pixel to specified RGB value. The next call to show()
+   * will refresh the LEDs to display this pixel.
+   *
+   * @param index Index of the pixel.
+   * @param r Red, 0=minimum (off), 255=brightest.
+   * @param g Green, 0=minimum (off), 255=brightest.
+   * @param b Blue, 0=minimum (off), 255=brightest.
+   */
+  void setPixelColor(int index, int r, int g, int b);
+
+  /**
+   * Copies packed colors onto the first pixels and turns the rest off.
+   *
+   * @param colors Colors packed with DotStar.color().
+   * @param count Number of pixels to copy from colors.
+   */
+  void setPixels(int[] colors, int count);
+
+  /**
+   * Sends the stored pixel values to the strip.
+   *
+   * @throws IOException Thrown if the write to the strip fails.
+   */
+  void show() throws IOException;
+
+  /**
+   * Returns the number of frames written to the strip.
+   *
+   * @return the number of frames sent
+   */
+  long getFramesSent();
+
+  /**
+   * Returns the number of show() calls that did not need to reach the strip.
+   *
+   * @return the number of skipped frames
+   */
+  long getFramesSkipped();
+}
@@ -0,0 +1,77 @@
+/**
+ * This class implements Largest-Triangle-Three-Buckets downsampling. It keeps
+ * the visual shape of a line, including its peaks, with a fixed number of points.
+ */
+public class Lttb {
+
+  private Lttb() {}
+
+  /**
+   * Downsamples the samples in a window. If the window holds no more than
+   * threshold samples they are copied unchanged.
+   *
+   * @param src samples to downsample
+   * @param threshold number of points to produce, at least 3
+   * @param outX receives the times of the chosen points
+   * @param outY receives the values of the chosen points
+   * @return the number of points written
+   */
+  public static int downsample(SlidingWindow src, int threshold, double[] outX, float[] outY) {
+    int n = src.size();
+    if (n <= threshold || threshold < 3) {
+      int count = Math.min(n, outX.length);
+      for (int i = 0; i < count; i++) {
+        outX[i] = src.getTime(i);
+        outY[i] = src.getValue(i);
+      }
+      return count;
+    }
+
+    // always keep the first and last point, pick one point from each bucket in between
+    float every = (float) (n - 2) / (threshold - 2);
+    int a = 0;
+    int out = 0;
+    outX[out] = src.getTime(0);
+    outY[out++] = src.getValue(0);
+    for (int b = 0; b < threshold - 2; b++) {
+      // average of the next bucket is the third corner of the triangle
+      int avgStart = (int) ((b + 1) * every) + 1;
+      int avgEnd = Math.min((int) ((b + 2) * every) + 1, n);
+      double avgX = 0;
+      float avgY = 0;
+      for (int i = avgStart; i < avgEnd; i++) {
+        avgX += src.getTime(i);
+        avgY += src.getValue(i);
+      }
+      int avgLen = avgEnd - avgStart;
+      if (avgLen > 0) {
+        avgX /= avgLen;
+        avgY /= avgLen;
+      } else {
+        avgX = src.getTime(n - 1);
+        avgY = src.getValue(n - 1);
+      }
+
+      // point of this bucket with the largest triangle against a and the average
+      int start = (int) (b * every) + 1;
+      int end = (int) ((b + 1) * every) + 1;
+      double ax = src.getTime(a);
+      float ay = src.getValue(a);
+      double maxArea = -1;
+      int chosen = start;
+      for (int i = start; i < end; i++) {
+        double area = Math.abs((ax - avgX) * (src.getValue(i) - ay) - (ax - src.getTime(i)) * (avgY - ay));
+        if (area > maxArea) {
+          maxArea = area;
+          chosen = i;
+        }
+      }
+      outX[out] = src.getTime(chosen);
+      outY[out++] = src.getValue(chosen);
+      a = chosen;
+    }
+    outX[out] = src.getTime(n - 1);
+    outY[out++] = src.getValue(n - 1);
+    return out;
+  }
+}
@@ -1,13 +1,14 @@
-import com.pi4j.io.gpio.*;
-import com.pi4j.io.i2c.*;
-import com.pi4j.io.i2c.I2CFactory.UnsupportedBusNumberException;
 import java.io.*;
+import java.net.InetSocketAddress;
 import java.time.LocalDateTime;
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import javafx.animation.*;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.beans.binding.Bindings;
 import javafx.beans.property.*;
 import javafx.beans.value.*;
@@ -19,6 +20,7 @@ import javafx.scene.control.*;
 import javafx.scene.image.Image;
 import javafx.scene.input.*;
 import javafx.scene.layout.*;
+import javafx.stage.Screen;
 import javafx.stage.Stage;
 import javafx.stage.StageStyle;
 import javafx.util.Duration;
@@ -31,68 +33,51 @@ import javafx.util.Duration;
  */
 public class Main extends Application {
 
-  // get a handle to the GPIO controller
-  private final GpioController gpio = GpioFactory.getInstance();
-  // creating the pin object
-  private final GpioPinDigitalOutput bell_pin = gpio.provisionDigitalOutputPin(
-    RaspiPin.GPIO_06,
-    "Bell",
-    PinState.LOW
-  );
-
-  //ADC Commands
-  private static final byte CMD_NEW_CNVRSN = (byte) 0x80; // Initiate a new conversion(One-Shot Conversion mode only)
-  private static final byte CMD_MODE_CONT = 0x10; // Continuous Conversion Mode
-  private static final byte CMD_MODE_ONESHOT = 0x00; // One-Shot Conversion Mode
-  private static final byte CMD_CH_1 = 0x00; // Channel 1
-  private static final byte CMD_CH_2 = 0x20; // Channel 2
-  private static final byte CMD_CH_3 = 0x40; // Channel 3
-  private static final byte CMD_CH_4 = 0x60; // Channel 4
-  private static final byte CMD_SPS_240 = 0x00; // 240 SPS (12-bit)
-  private static final byte CMD_SPS_60 = 0x04; // 60 SPS (14-bit)
-  private static final byte CMD_SPS_15 = 0x08; // 15 SPS (16-bit)
-  private static final byte CMD_SPS_3 = 0x0C; // 3.75 SPS (18-bit)
-  private static final byte CMD_GAIN_1 = 0x00; // PGA Gain = 1V/V
-  private static final byte CMD_GAIN_2 = 0x01; // PGA Gain = 2V/V
-  private static final byte CMD_GAIN_4 = 0x02; // PGA Gain = 4V/V
-  private static final byte CMD_GAIN_8 = 0x03; // PGA Gain = 8V/V
-  private static final byte CMD_READ_CNVRSN = 0x00; // Read Conversion Result Data
-  private static final byte address_1 = 0x6C; // X address
-  private static final byte address_2 = 0x68; // Y address
-  private static final byte address_3 = 0x6A; // Z address
-  private static final byte CH1_CONFIG_CMD =
-    (CMD_CH_1 | CMD_MODE_CONT | CMD_SPS_15 | CMD_GAIN_1); // ADC Configuration command for all ADCs
-  I2CBus i2c; // i2c bus 1
-  I2CDevice adc_1; // X axis ADC
-  I2CDevice adc_2; // Y axis ADC
-  I2CDevice adc_3; // Z axis ADC
+  // ADCs, LED strip and bell, real or simulated
+  private volatile Hardware hardware;
+  private CompletableFuture<Void> hardware_started; // hardware setup running alongside the UI setup
+  private final Object startup = new Object(); // lets startHardware() and stop() agree on who releases the hardware
+  private volatile boolean stopping = false; // has stop() been called, set holding startup
+  private boolean hardware_running = false; // did startHardware() start the threads before stop(), guarded by startup
+  private static final boolean EXIT_AFTER_STARTUP = Settings.getBoolean("exit.after.startup", false); // quit once started, for class archive training
+
+  //ADC configuration, the addresses are set per station
+  private static final AcquisitionProfile PROFILE = AcquisitionProfile.parse(
+    Settings.getString("acquisition.profile", "15"),
+    AcquisitionProfile.SPS_15
+  ); // ADC conversion rate and resolution
+  private static final String TRIGGER = Settings.getString(
+    "acquisition.trigger",
+    "continuous"
+  ); // continuous, oneshot or generalcall
+  private static final boolean ONE_SHOT = !TRIGGER.equals("continuous"); // trigger each conversion
+  private static final byte CH1_CONFIG_CMD = ONE_SHOT
+    ? PROFILE.getOneShotConfig(Mcp342x.CMD_CH_1, Mcp342x.CMD_GAIN_1)
+    : PROFILE.getConfig(Mcp342x.CMD_CH_1, Mcp342x.CMD_GAIN_1); // ADC Configuration command for all ADCs
+  private static final boolean USE_Z = Settings.getBoolean("adc.z.enabled", false); // read the z ADC
+
+  //acquisition
+  private static final float SAMPLE_RATE = Settings.getFloat("sample.rate.hz", PROFILE.getRate()); // ADC sample rate
+  private static final int SAMPLER_CPU = Settings.getInt("sampler.cpu", -1); // cpu for the sampling thread
+  private final float sample[] = new float[SampleRing.AXES]; // last sample drained from a ring
+  private volatile SamplingScheduler sampler; // reads every station's ADCs on one thread
+  private static final String REPLAY_FILE = Settings.getString("replay.file", ""); // recording played instead of the ADCs
+  private static final float REPLAY_SPEED = Settings.getFloat("replay.speed", 1); // 1 real-time, N times faster, 0 as fast as possible
+  private volatile ReplaySource replay; // recording played into the first station, null when reading its ADCs
+  private final PipelineMetrics metrics = new PipelineMetrics(); // latency of each stage from sample to screen
+  private Label metrics_label; // metrics overlay, toggled with F3
+  private long metrics_shown = 0; // when the overlay was last refreshed in ns
+  private long update_errors = 0; // ticks whose update threw
+  private static final boolean RECORD = Settings.getBoolean("record.enabled", false); // record every raw sample
+  private static final String TELEMETRY_HOST = Settings.getString("telemetry.host", ""); // where live samples are streamed, empty for nowhere
 
   private Timeline timeline; //timeline object
-  private static final Duration UPDATE_FREQUENCY = Duration.millis(100); // sample rate
+  private static final Duration UPDATE_FREQUENCY = Duration.millis(
+    Settings.getInt("ui.period.ms", 100)
+  ); // UI refresh rate
+  private static final long UPDATE_PERIOD = (long) (UPDATE_FREQUENCY.toMillis() * 1e6); // UI refresh period in ns
   private int high_score_counter = 0; //counter for resetting high score on long press
 
-  //voltages
-  private float voltage_x = 0; //voltage for x
-  private float voltage_y = 0; //voltage for y
-  private float voltage_z = 0; //voltage for z
-
-  //voltage offsets
-  private float offset_x = 0; //offset for x
-  private float offset_y = 0; //offset for y
-  private float offset_z = 0; //offset for z
-
-  //pound forces
-  private float lb_x = 0; //pound force for x
-  private float lb_y = 0; //pound force for y
-  private float lb_z = 0; //pound force for z
-  private float lb_combined = 0; //total pound force
-  private float high_score = 50; //high score in lbs
-
-  //conversion factor (lb/V)
-  private float sensitivity_x = 1400; //sensitivity for x
-  private float sensitivity_y = 1400; //sensitivity for y
-  private float sensitivity_z = 1400; //sensitivity for z
-
   //shunt equivalence for each axis
   private float shunt_eq_x = 700; //shunt equivalence for x
   private float shunt_eq_y = 700; //shunt equivalence for y
@@ -103,7 +88,11 @@ public class Main extends Application {
 
   //scences
   Scene main_scene;
-  Scene shunt_scene;
+  Scene shunt_scene; // built the first time it is shown
+  private static final String BACKGROUND_IMAGE = Settings.getString(
+    "background.image",
+    "/home/pi/Desktop/3DARMDEMO/fair.png"
+  ); // main scene background
 
   //pound labels
   private Label lbs_combined_label;
@@ -117,6 +106,18 @@ public class Main extends Application {
   private Label volt_y_label;
   private Label volt_z_label;
 
+  //formatters that only change the pound and voltage labels when the shown value changes
+  private static final long FORCE_LABEL_INTERVAL = Settings.getInt("label.force.interval.ms", 0); // least time between force label updates
+  private static final long VOLTAGE_LABEL_INTERVAL = Settings.getInt("label.voltage.interval.ms", 250); // least time between voltage label updates
+  private LabelFormatter lbs_combined_text;
+  private LabelFormatter high_score_text;
+  private LabelFormatter lbs_x_text;
+  private LabelFormatter lbs_y_text;
+  private LabelFormatter lbs_z_text;
+  private LabelFormatter volt_x_text;
+  private LabelFormatter volt_y_text;
+  private LabelFormatter volt_z_text;
+
   //sensitivity labels
   private Label sensitivity_x_label;
   private Label sensitivity_y_label;
@@ -124,36 +125,34 @@ public class Main extends Application {
 
   //chart variables
   private LineChart<Number, Number> scatter_chart; //scatter chart
-  private XYChart.Series series; //scatter chart series
-  private int time = 0; //time since  in ms
-  private float time_sec = 0; //time in seconds
-  private Queue<Float> q = new LinkedList<>(); //2 second queue of forces for setting upper bound
+  private static final int CHART_POINTS = Settings.getInt("chart.points", 200); // points drawn on the chart
+  private ChartSeries series; //fixed size scatter chart series
+  private static final boolean CANVAS_CHART = Settings.getString("chart.renderer", "line").equals("canvas"); // draw the chart on a canvas
+  private StripChart strip_chart; //canvas chart, null when the line chart is used
+  private static final float CHART_WINDOW = Settings.getFloat("chart.window.s", 2); // seconds shown on the chart
   private NumberAxis xAxis; //x axis
   private NumberAxis yAxis; //y axis
 
   //led strip variables
-  private DotStar led_strip; // Dotstar LED strip
+  private volatile ScheduledExecutorService led_render; // draws every station's LED strip
   private final int NUM_LEDS = 68; // number of LEDs
-  private float perc = 0; // percentage of bar filled
-  private int green = 120; // green of first pixel 
-  private int red = 0; // red of first pixel
+  private static final float LED_FPS = Settings.getFloat("led.fps", 100); // most LED frames per second
+  private static final int RAINBOW_FRAMES = Settings.getInt("led.rainbow.frames", 300); // length of the high score flash
 
-  //bools for triggering high score
-  private boolean zeroed = false; // are the forces zeroed
-  private boolean calibrated = false; // are the shunts calibrated
+  //stations, each with its own ADCs, LED strip, bell, forces, offsets, sensitivities and high score
+  private static final int STATIONS = Math.max(1, Settings.getInt("stations", 1)); // arm rigs run by this demo
+  private final Station stations[] = getStations(); // every station
+  private Station station = stations[0]; // station shown on the screen
 
 
   /**
    * sets the offsets in all axes
    */
   public void setOffsets() {
-    offset_x = voltage_x;
-    offset_y = voltage_y;
-    offset_z = voltage_z;
-    high_score = 50;
-    high_score_label.setText(String.format("%1.2flbf ", high_score));
-    bell_pin.low();
-    zeroed = true;
+    station.getForces().setOffsets();
+    recordState();
+    high_score_text.set(station.getForces().getHighScore());
+    station.bellOff();
   }
 
   /**
@@ -161,166 +160,169 @@ public class Main extends Application {
    * It also disables the bell.
    */
   public void resetOffsets() {
-    zeroed = false;
-    offset_x = 0;
-    offset_y = 0;
-    offset_z = 0;
-    bell_pin.low();
+    station.getForces().resetOffsets();
+    recordState();
+    station.bellOff();
   }
 
   /**
    * Sets the sensitivities in all axes and displays them.
    */
   public void calibrateAll() {
-    sensitivity_x = voltage_x != 0 ? shunt_eq_x / voltage_x : 0;
-    sensitivity_y = voltage_y != 0 ? shunt_eq_y / voltage_y : 0;
-    sensitivity_z = voltage_z != 0 ? shunt_eq_z / voltage_z : 0;
-    sensitivity_x_label.setText(String.format("%1.2flb/V", sensitivity_x));
-    sensitivity_y_label.setText(String.format("%1.2flb/V", sensitivity_y));
-    sensitivity_z_label.setText(String.format("%1.2flb/V", sensitivity_z));
-    calibrated = true;
+    station.getForces().calibrate(new float[] { shunt_eq_x, shunt_eq_y, shunt_eq_z });
+    recordState();
+    showSensitivities();
   }
 
   /**
-   * Reads the ADCs and updates the voltages, lbs, labels, LED strip, and triggers the bell if a high score is broken.
-   * 
-   * @throws IOException if the led strip fails to write or the ADCs fail to read
-   * @throws InterruptedException if the current thread is interrupted
+   * Displays the sensitivities in all axes.
    */
-  public void updateValues() throws IOException, InterruptedException {
-    //adc data
-    byte data[] = { 0, 0 };
-    byte result_arr[] = { 0, 0, 0, 0 };
-    int raw_adc = 0;
-    int err = 0;
+  private void showSensitivities() {
+    if (sensitivity_x_label == null) return; // shunt scene not built yet
+    ForcePipeline forces = station.getForces();
+    sensitivity_x_label.setText(String.format("%1.2flb/V", forces.getSensitivity(ForcePipeline.X)));
+    sensitivity_y_label.setText(String.format("%1.2flb/V", forces.getSensitivity(ForcePipeline.Y)));
+    sensitivity_z_label.setText(String.format("%1.2flb/V", forces.getSensitivity(ForcePipeline.Z)));
+  }
 
-    try {
-      //read and format adc 1
-      adc_1.write(CH1_CONFIG_CMD);
-      while (err <= 0) err = adc_1.read(data, 0, 2);
-      err = 0;
-      result_arr[1] = data[0];
-      result_arr[0] = data[1];
-      raw_adc =
-        ((result_arr[3] & 0xFF) << 24) |
-        ((result_arr[2] & 0xFF) << 16) |
-        ((result_arr[1] & 0xFF) << 8) |
-        ((result_arr[0] & 0xFF) << 0);
-      if (raw_adc > 32767) raw_adc = -1 * (raw_adc - 32767);
-      voltage_x = (float) (((float) raw_adc / 32767) * 2.048);
-      volt_x_label.setText(String.format("%1.4fV ", voltage_x - offset_x));
-
-      //read and format adc 2
-      adc_2.write(CH1_CONFIG_CMD);
-      while (err <= 0) err = adc_2.read(data, 0, 2);
-      err = 0;
-      result_arr[1] = data[0];
-      result_arr[0] = data[1];
-      raw_adc =
-        ((result_arr[3] & 0xFF) << 24) |
-        ((result_arr[2] & 0xFF) << 16) |
-        ((result_arr[1] & 0xFF) << 8) |
-        ((result_arr[0] & 0xFF) << 0);
-      if (raw_adc > 32767) raw_adc = -1 * (raw_adc - 32767);
-      voltage_y = (float) (((float) raw_adc / 32767) * 2.048);
-      volt_y_label.setText(String.format("%1.4fV ", voltage_y - offset_y));
-
-      // //read and format adc 1  IF YOU WANT TO USE Z
-      // adc_3.write(CH1_CONFIG_CMD);
-      // while (err <= 0) err = adc_3.read(data, 0, 2);
-      // err = 0;
-      // result_arr[1] = data[0];
-      // result_arr[0] = data[1];
-      // raw_adc =
-      //   ((result_arr[3] & 0xFF) << 24) |
-      //   ((result_arr[2] & 0xFF) << 16) |
-      //   ((result_arr[1] & 0xFF) << 8) |
-      //   ((result_arr[0] & 0xFF) << 0);
-      // if (raw_adc > 32767) raw_adc = -1 * (raw_adc - 32767);
-      // voltage_z = (float) (((float) raw_adc / 32767) * 2.048);
-      // volt_z_label.setText(String.format("%1.4fV ", voltage_z - offset_z));
-    } catch (Exception e) {
-      System.out.println("ADCs Not Responding");
-    }
+  /**
+   * Records the offsets, sensitivities and high score if a session is being recorded.
+   */
+  private void recordState() {
+    if (station.getStream() != null) station.getStream().state(station.getForces());
+  }
 
-    //update lbs
-    lb_x = Math.abs(sensitivity_x * (voltage_x - offset_x));
-    lbs_x_label.setText(String.format("%1.2flbf ", lb_x));
-    lb_y = Math.abs(sensitivity_x * (voltage_y - offset_y));
-    lbs_y_label.setText(String.format("%1.2flbf ", lb_y));
-    lb_z = Math.abs(sensitivity_z * (voltage_z - offset_z));
-    lbs_z_label.setText(String.format("%1.2flbf ", lb_z));
-    lb_combined = lb_x + lb_y + lb_z;
-    lbs_combined_label.setText(String.format("%1.2flbf ", lb_combined));
+  /**
+   * Creates the stations from the stations and station.N settings.
+   *
+   * @return every station
+   */
+  private Station[] getStations() {
+    Station list[] = new Station[STATIONS];
+    for (int i = 0; i < list.length; i++) list[i] = new Station(
+      i + 1,
+      new ForcePipeline((int) (CHART_WINDOW * SAMPLE_RATE * 2) + 16, CHART_WINDOW),
+      metrics,
+      NUM_LEDS
+    );
+    return list;
+  }
 
-    //update LED strip
-    float scalar = lb_combined / high_score;
-    if (scalar > 1 && zeroed && calibrated) {
-      //new high score
-      high_score = lb_combined > high_score ? lb_combined : high_score;
-      high_score_label.setText(String.format("%1.2flbf ", high_score));
-      bell_pin.high();//start bell
-      ledRainbow();//led flash
-      bell_pin.low();//stop bell
+  /**
+   * Shows a station on the screen.
+   *
+   * @param next the station to show
+   */
+  private void selectStation(Station next) {
+    station = next;
+    high_score_text.set(station.getForces().getHighScore());
+    showSensitivities();
+  }
+
+  /**
+   * Returns the number of samples dropped because the UI fell behind.
+   *
+   * @return the dropped samples of every station
+   */
+  private long getDropped() {
+    long dropped = 0;
+    for (Station s : stations) dropped += s.getRing().getDropped();
+    return dropped;
+  }
+
+  /**
+   * Runs every station's ADC samples since the last tick through the force and high score logic,
+   * then updates the voltages, lbs, labels and chart of the shown station.
+   */
+  public void updateValues() {
+    long tick_time = System.nanoTime();
+    metrics.tick(tick_time, UPDATE_PERIOD);
+    long sample_time = 0; // timestamp of the shown station's newest sample
+    for (Station s : stations) {
+      long newest = updateStation(s);
+      if (s == station) sample_time = newest;
+    }
+
+    ForcePipeline forces = station.getForces();
+    volt_x_text.set(forces.getVoltage(ForcePipeline.X) - forces.getOffset(ForcePipeline.X));
+    volt_y_text.set(forces.getVoltage(ForcePipeline.Y) - forces.getOffset(ForcePipeline.Y));
+    if (USE_Z) volt_z_text.set(forces.getVoltage(ForcePipeline.Z) - forces.getOffset(ForcePipeline.Z));
+    lbs_x_text.set(forces.getPounds(ForcePipeline.X));
+    lbs_y_text.set(forces.getPounds(ForcePipeline.Y));
+    lbs_z_text.set(forces.getPounds(ForcePipeline.Z));
+
+    // update the chart
+    SlidingWindow force_window = forces.getWindow();
+    double time_sec = forces.getTime();
+    if (strip_chart != null) {
+      strip_chart.update(force_window);
     } else {
-      if (scalar > 1) scalar = 1;
-      //display leds
-      ledScale(scalar);
+      series.update(force_window);
+      xAxis.setUpperBound(time_sec);
+      if (time_sec > CHART_WINDOW) xAxis.setLowerBound(time_sec - CHART_WINDOW);
+      yAxis.setUpperBound(force_window.getMax() + 1);
     }
+    if (sample_time != 0) metrics.record(PipelineMetrics.Stage.CHART, sample_time, System.nanoTime());
 
-    // update the line chart
-    time += 100;
-    time_sec = (float) time / 1000;
-    series.getData().add(new XYChart.Data(time_sec, lb_combined));
-    xAxis.setUpperBound(time_sec);
-    q.add(lb_combined);
-    if (time_sec > 2) {
-      xAxis.setLowerBound(time_sec - 2);
-      if (time_sec % 200 == 0) series.getData().remove(0, (200 - 2));
-      q.remove();
+    // refresh the metrics overlay about once a second
+    if (metrics_label.isVisible() && tick_time - metrics_shown >= 1000000000L) {
+      metrics_label.setText(metrics.report(getDropped()));
+      metrics_shown = tick_time;
     }
-    yAxis.setUpperBound(Collections.max(q) + 1);
   }
 
   /**
-   * Displays a rainbow on the led strip.
-   * 
-   * @throws IOException if the led strip fails to write
-   * @throws InterruptedException if the current thread is interrupted
-   */
-  public void ledRainbow() throws IOException, InterruptedException {
-    for (int j = 0; j < 300; j++) { // change the max value to adjust the number of color changes
-      for (int i = 0; i < NUM_LEDS; i++) led_strip.setPixelColor(
-        i,
-        (int) (Math.random() * 255),
-        (int) (Math.random() * 255),
-        (int) (Math.random() * 255)
-      );
-      led_strip.show();
-      //Thread.sleep(5); // Use a delay if the flash sequence is too short
+   * Runs every sample a station took since the last tick through the force and high score logic,
+   * then updates its LED strip, and rings its bell if a high score is broken.
+   *
+   * @param s the station
+   * @return the timestamp of the newest sample, 0 if there was none
+   */
+  private long updateStation(Station s) {
+    ForcePipeline forces = s.getForces();
+    SampleRing ring = s.getRing();
+    SampleStream stream = s.getStream();
+    boolean replaying = replay != null && s == stations[0];
+
+    //run every new sample through the force and high score logic
+    boolean new_high_score = false;
+    int sample_count = 0; // samples drained this tick
+    long sample_time = 0; // timestamp of the newest sample
+    boolean replayed_state = false; // did the replay change the offsets, sensitivities or high score
+    while (ring.poll(sample)) {
+      if (replaying && replay.apply(forces)) {
+        replayed_state = true;
+        if (stream != null) stream.state(forces);
+      }
+      sample_time = ring.getPolledTime();
+      boolean high_score_sample = forces.add(sample_time, sample[0], sample[1], sample[2]);
+      if (high_score_sample) new_high_score = true;
+      if (stream != null) stream.sample(sample_time, forces, high_score_sample);
+      metrics.record(PipelineMetrics.Stage.FORCE, sample_time, System.nanoTime());
+      sample_count++;
+    }
+    metrics.addSamples(sample_count);
+    Decimator force_decimator = forces.getDecimator();
+    float lb_display = force_decimator.take(); // combined force averaged over this tick
+    float high_score = forces.getHighScore();
+    if (s == station) {
+      lbs_combined_text.set(lb_display);
+      if (replayed_state || new_high_score) high_score_text.set(high_score);
+      if (replayed_state) showSensitivities();
     }
-    led_strip.clear();
-    led_strip.show();
-  }
-
 
-  /**
-   * Displays the scale on the LED strip with a green to red gradient.
-   * 
-   * @param scalar number between 0 and 1 that represents the percentage of LEDs enabled
-   * @throws IOException if the led strip fails to write
-   * @throws InterruptedException if the current thread is interrupted
-   */
-  public void ledScale(float scalar) throws IOException, InterruptedException {
-    led_strip.clear();
-    green = 120; //255 was too green so I went with 120
-    for (int i = 0; i < Math.round(NUM_LEDS * scalar); i++) {
-      perc = (float) i / NUM_LEDS;
-      if (perc <= 0.5) red = (int) Math.round(2 * perc * 255); else green =
-        (int) Math.round((1 - (2 * (perc - 0.5))) * 120);
-      led_strip.setPixelColor(i, red, green, 0);
+    //update LED strip
+    if (new_high_score) {
+      System.out.println("New high score at " + s.getName() + ", " + forces.getLastPull());
+      s.celebrate(RAINBOW_FRAMES, LED_FPS);//led flash, the bell rings for as long
+    } else {
+      //the bar follows the peak of the tick so short pulls still show
+      float scalar = force_decimator.getMax() / high_score;
+      if (scalar > 1) scalar = 1;
+      //display leds
+      s.ledScale(scalar, sample_time);
     }
-    led_strip.show();
+    return sample_time;
   }
 
   /**
@@ -341,6 +343,7 @@ public class Main extends Application {
 
     // Text label for displaying the total pound force
     lbs_combined_label = new Label("0.00lbf");
+    lbs_combined_text = new LabelFormatter(lbs_combined_label, 2, "lbf ", FORCE_LABEL_INTERVAL);
     lbs_combined_label.getStyleClass().add("header");
     box.getChildren().add(lbs_combined_label);
 
@@ -364,7 +367,8 @@ public class Main extends Application {
     box.getChildren().add(high_score_title_label);
 
     // Text label for displaying the total pound force
-    high_score_label = new Label(String.format("%1.2flbf ", high_score));
+    high_score_label = new Label(String.format("%1.2flbf ", station.getForces().getHighScore()));
+    high_score_text = new LabelFormatter(high_score_label, 2, "lbf ", 0);
     high_score_label.getStyleClass().add("sub-header");
     box.getChildren().add(high_score_label);
 
@@ -389,11 +393,13 @@ public class Main extends Application {
 
     // Text label for displaying the pound force of the x axis
     lbs_x_label = new Label("0.00lbf ");
+    lbs_x_text = new LabelFormatter(lbs_x_label, 2, "lbf ", FORCE_LABEL_INTERVAL);
     lbs_x_label.getStyleClass().add("sub-header");
     box.getChildren().add(lbs_x_label);
 
     // Text label for displaying the voltage of the x axis
     volt_x_label = new Label("0.0000V ");
+    volt_x_text = new LabelFormatter(volt_x_label, 4, "V ", VOLTAGE_LABEL_INTERVAL);
     volt_x_label.getStyleClass().add("sub-header");
     box.getChildren().add(volt_x_label);
 
@@ -418,11 +424,13 @@ public class Main extends Application {
 
     // Text label for displaying the pound force of the x axis
     lbs_y_label = new Label("0.00lbf ");
+    lbs_y_text = new LabelFormatter(lbs_y_label, 2, "lbf ", FORCE_LABEL_INTERVAL);
     box.getChildren().add(lbs_y_label);
     lbs_y_label.getStyleClass().add("sub-header");
 
     // Text label for displaying the voltage of the x axis
     volt_y_label = new Label("0.0000V ");
+    volt_y_text = new LabelFormatter(volt_y_label, 4, "V ", VOLTAGE_LABEL_INTERVAL);
     box.getChildren().add(volt_y_label);
     volt_y_label.getStyleClass().add("sub-header");
 
@@ -447,11 +455,13 @@ public class Main extends Application {
 
     // Text label for displaying the pound force of the x axis
     lbs_z_label = new Label("0.00lbf ");
+    lbs_z_text = new LabelFormatter(lbs_z_label, 2, "lbf ", FORCE_LABEL_INTERVAL);
     box.getChildren().add(lbs_z_label);
     lbs_z_label.getStyleClass().add("sub-header");
 
     // Text label for displaying the voltage of the x axis
     volt_z_label = new Label("0.0000V ");
+    volt_z_text = new LabelFormatter(volt_z_label, 4, "V ", VOLTAGE_LABEL_INTERVAL);
     box.getChildren().add(volt_z_label);
     volt_z_label.getStyleClass().add("sub-header");
 
@@ -471,7 +481,8 @@ public class Main extends Application {
       getForceXLabels(),
       getForceYLabels()
     );
-    getForceZLabels();// put this in the box to show the z labels and uncomment the adc 3 read in the updateValues method
+    HBox z_labels = getForceZLabels();
+    if (USE_Z) box.getChildren().add(z_labels);// set adc.z.enabled to show the z labels and read adc 3
 
     box.setSpacing(20);
     box.setPadding(new Insets(0, 20, 10, 20));
@@ -509,7 +520,8 @@ public class Main extends Application {
             startTime = System.currentTimeMillis();
           } else if (event.getEventType().equals(MouseEvent.MOUSE_RELEASED)) {
             if (System.currentTimeMillis() - startTime > 2 * 1000) {
-              high_score = 0;
+              station.getForces().setHighScore(0);
+              recordState();
             } else resetOffsets();
           }
         }
@@ -518,7 +530,7 @@ public class Main extends Application {
 
     // Button to switch to shunt screen
     Button shunt_button = new Button("Shunt");
-    shunt_button.setOnAction(e -> stage.setScene(shunt_scene));
+    shunt_button.setOnAction(e -> stage.setScene(getShuntScene()));
 
     // Button to exit the application
     Button exit_button = new Button("Exit");
@@ -530,6 +542,20 @@ public class Main extends Application {
       .getChildren()
       .addAll(zero_button, reset_button, shunt_button, exit_button);
 
+    // Button to switch between stations, shown when there is more than one
+    if (stations.length > 1) {
+      Button station_button = new Button(station.getName());
+      station_button.setOnAction(
+        e -> {
+          int next = 0;
+          while (stations[next] != station) next++;
+          selectStation(stations[(next + 1) % stations.length]);
+          station_button.setText(station.getName());
+        }
+      );
+      box.getChildren().add(3, station_button);
+    }
+
     return box;
   }
 
@@ -571,19 +597,19 @@ public class Main extends Application {
     //x
     Label sensitivity_x_title = new Label("Sensitivity X: ");
     sensitivity_x_title.getStyleClass().add("sub-header");
-    sensitivity_x_label = new Label(String.format("%1.2flb/V", sensitivity_x));
+    sensitivity_x_label = new Label(String.format("%1.2flb/V", station.getForces().getSensitivity(ForcePipeline.X)));
     sensitivity_x_label.getStyleClass().add("sub-header");
 
     //y
     Label sensitivity_y_title = new Label("Sensitivity Y: ");
     sensitivity_y_title.getStyleClass().add("sub-header");
-    sensitivity_y_label = new Label(String.format("%1.2flb/V", sensitivity_y));
+    sensitivity_y_label = new Label(String.format("%1.2flb/V", station.getForces().getSensitivity(ForcePipeline.Y)));
     sensitivity_y_label.getStyleClass().add("sub-header");
 
     //z
     Label sensitivity_z_title = new Label("Sensitivity Z: ");
     sensitivity_z_title.getStyleClass().add("sub-header");
-    sensitivity_z_label = new Label(String.format("%1.2flb/V", sensitivity_z));
+    sensitivity_z_label = new Label(String.format("%1.2flb/V", station.getForces().getSensitivity(ForcePipeline.Z)));
     sensitivity_z_label.getStyleClass().add("sub-header");
 
     box
@@ -720,34 +746,44 @@ public class Main extends Application {
     //scatter_chart.setCreateSymbols(false); //remove points
 
     //Prepare XYChart.Series objects by setting data
-    series = new XYChart.Series();
-    series.getData().add(new XYChart.Data(0, 0));
+    series = new ChartSeries(CHART_POINTS);
 
     //Setting the data to scatter chart
-    scatter_chart.getData().add(series);
+    scatter_chart.getData().add(series.getSeries());
 
     return scatter_chart;
   }
 
   /**
-   * Initializes the adcs, led strips, sets up the scences, and starts the application.
-   * 
-   * @param stage main stage for the GUI
-   * @throws FileNotFoundException if it can't find the fair.png
-   * @throws IOException if it can't communicate with the ADCs
-   * @throws UnsupportedBusNumberException if the I2c bus doesn't exist
-   * @throws InterruptedException if the thread gets interrupted
+   * Returns the force chart selected by the chart.renderer setting, either
+   * the line chart or the canvas strip chart.
+   *
+   * @return the chart for displaying the force over time
+   */
+  public Region getChart() {
+    if (!CANVAS_CHART) return getScatterChart();
+    strip_chart = new StripChart(CHART_WINDOW);
+    strip_chart.setPrefWidth(400.0);
+    return strip_chart;
+  }
+
+  /**
+   * Starts the hardware on a background thread, builds the main scene while it
+   * starts and shows the window. The values start updating once the hardware is ready.
+   *
+   * @param stage the primary stage
    */
   @Override
-  public void start(Stage stage)
-    throws FileNotFoundException, IOException, UnsupportedBusNumberException, InterruptedException {
-    //initialize ADCs
-    i2c = I2CFactory.getInstance(I2CBus.BUS_1);
-    adc_1 = i2c.getDevice(address_1);
-    adc_2 = i2c.getDevice(address_2);
-    adc_3 = i2c.getDevice(address_3);
-    //initialize LED strip
-    led_strip = new DotStar(NUM_LEDS);
+  public void start(Stage stage) {
+    hardware_started = CompletableFuture.runAsync(
+      () -> {
+        try {
+          startHardware();
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    );
 
     stage.initStyle(StageStyle.UNDECORATED);
     this.stage = stage;
@@ -758,27 +794,7 @@ public class Main extends Application {
     root.setHgap(20);
     root.setVgap(20);
     root.setPadding(new Insets(20, 2, 10, 2));
-    FileInputStream img = new FileInputStream(
-      "/home/pi/Desktop/3DARMDEMO/fair.png"
-    );
-    root.setBackground(
-      new Background(
-        new BackgroundImage(
-          new Image(img),
-          BackgroundRepeat.NO_REPEAT,
-          BackgroundRepeat.NO_REPEAT,
-          BackgroundPosition.DEFAULT,
-          new BackgroundSize(
-            BackgroundSize.AUTO,
-            BackgroundSize.AUTO,
-            true,
-            true,
-            false,
-            true
-          )
-        )
-      )
-    );
+    setBackgroundImage(root);
 
     // Add root to the scene
     main_scene = new Scene(root, 1024, 600);
@@ -792,12 +808,31 @@ public class Main extends Application {
     //Add scatter chart
     HBox chart_group = new HBox();
     chart_group.setPrefWidth(400.0);
-    chart_group.getChildren().add(getScatterChart());
+    chart_group.getChildren().add(getChart());
     root.add(chart_group, 6, 0, 1, 5);
 
     //Add buttons
     root.add(getButtons(), 0, 10, 7, 2);
 
+    //Add metrics overlay, F3 shows it and F4 prints the metrics
+    metrics_label = new Label();
+    metrics_label.getStyleClass().add("metrics");
+    metrics_label.setVisible(false);
+    metrics_label.setMouseTransparent(true);
+    GridPane.setValignment(metrics_label, VPos.TOP);
+    root.add(metrics_label, 0, 0, 7, 10);
+    main_scene.addEventHandler(
+      KeyEvent.KEY_PRESSED,
+      e -> {
+        if (e.getCode() == KeyCode.F3) {
+          metrics_label.setVisible(!metrics_label.isVisible());
+          metrics_shown = 0;
+        } else if (e.getCode() == KeyCode.F4) {
+          System.out.println(metrics.report(getDropped()));
+        }
+      }
+    );
+
     //update values
     timeline =
       new Timeline(
@@ -808,14 +843,238 @@ public class Main extends Application {
             public void handle(ActionEvent actionEvent) {
               try {
                 updateValues();
-              } catch (Exception e) {}
+              } catch (Exception e) {
+                if (update_errors++ == 0) {
+                  System.out.println("Update failed: " + e);
+                  e.printStackTrace();
+                }
+              }
             }
           }
         ),
         new KeyFrame(UPDATE_FREQUENCY)
       );
     timeline.setCycleCount(Timeline.INDEFINITE);
-    timeline.play();
+    hardware_started.whenComplete((v, e) -> Platform.runLater(() -> hardwareStarted(e)));
+
+    // The top level JavaFX container
+    stage.setTitle("3D Arm Demo");
+    stage.setScene(main_scene);
+    stage.setMaximized(true);
+    stage.show();
+  }
+
+  /**
+   * Initializes the hardware and starts the sampling or replay thread. Runs
+   * on a background thread while the UI is built. If it fails, or stop() is
+   * called before the threads are started, it releases whatever it opened.
+   *
+   * @throws IOException if the hardware or the replay can't be opened
+   */
+  private void startHardware() throws IOException {
+    boolean started = false; // were the threads started, so stop() releases the hardware
+    try {
+      openHardware();
+      synchronized (startup) {
+        if (stopping) return;
+        if (replay != null) replay.start();
+        sampler.start();
+        started = hardware_running = true;
+      }
+    } finally {
+      if (!started) releaseHardware();
+    }
+  }
+
+  /**
+   * Initializes every station's ADCs, LED strip and bell, the sampler or
+   * replay, the recordings and the telemetry, until stop() is called.
+   *
+   * @throws IOException if the hardware or the replay can't be opened
+   */
+  private void openHardware() throws IOException {
+    hardware = Hardware.create();
+    led_render = LedAnimator.newRenderThread();
+    sampler = new SamplingScheduler(SAMPLER_CPU);
+    for (int i = 0; i < stations.length; i++) {
+      if (stopping) return;
+      Station s = stations[i];
+      boolean replayed = !REPLAY_FILE.isEmpty() && i == 0; // the replay takes the place of the first station's ADCs
+      //initialize ADCs, LED strip and bell
+      s.open(hardware, CH1_CONFIG_CMD, LED_FPS, led_render);
+      //record and stream the samples on their own thread
+      SessionRecorder recorder = null;
+      if (RECORD && !replayed) {
+        File dir = new File(Settings.getString("record.dir", "recordings"));
+        try {
+          recorder = new SessionRecorder(
+            stations.length > 1 ? new File(dir, "station-" + (i + 1)) : dir,
+            Settings.getInt("record.segment.mb", 16) * 1024L * 1024L,
+            new float[] {
+              s.getSensor(ForcePipeline.X).toVoltage(1),
+              s.getSensor(ForcePipeline.Y).toVoltage(1),
+              s.getSensor(ForcePipeline.Z).toVoltage(1),
+            }
+          );
+        } catch (IOException e) {
+          System.out.println("Could not start recording: " + e.getMessage());
+        }
+      }
+      TelemetrySender telemetry = null;
+      if (!TELEMETRY_HOST.isEmpty()) {
+        try {
+          telemetry = new TelemetrySender(
+            new InetSocketAddress(TELEMETRY_HOST, Settings.getInt("telemetry.port", 5005) + i), // one port per station
+            Settings.getInt("telemetry.queue", 4096),
+            Settings.getInt("telemetry.batch", 16),
+            Settings.getInt("telemetry.delay.ms", 20)
+          );
+          telemetry.start();
+        } catch (IOException e) {
+          System.out.println("Could not start telemetry: " + e.getMessage());
+        }
+      }
+      if (recorder != null || telemetry != null) {
+        SampleStream stream = new SampleStream(
+          recorder,
+          telemetry,
+          Settings.getInt("stream.queue", 4096),
+          SAMPLE_RATE
+        );
+        stream.start();
+        s.setStream(stream);
+      }
+      if (replayed) continue;
+      boolean general_call = TRIGGER.equals("generalcall");
+      if (general_call && sharesBus(i)) {
+        System.out.println(
+          s.getName() + " shares I2C bus " + s.getBus() +
+          " with another station, so its ADCs are triggered one by one instead of with a general call"
+        );
+        general_call = false;
+      }
+      sampler.add(s.newSampler(hardware, USE_Z, general_call, SAMPLE_RATE));
+    }
+    if (!REPLAY_FILE.isEmpty()) {
+      Station s = stations[0];
+      replay = new ReplaySource(
+        new SessionReader(new File(REPLAY_FILE)),
+        s.getRing(),
+        s.getStream() != null ? s.getStream().getRing() : null,
+        REPLAY_SPEED
+      );
+    }
+  }
+
+  /**
+   * Stops the sampling or replay, LED and bell threads, closes the recordings
+   * and the telemetry and releases the hardware, as far as they were started.
+   */
+  private void releaseHardware() {
+    try {
+      if (sampler != null) sampler.stop();
+      if (replay != null) replay.stop();
+      for (Station s : stations) s.stop();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (led_render != null) led_render.shutdown();
+    if (hardware != null) hardware.close();
+  }
+
+  /**
+   * Returns whether a station's ADCs share their I2C bus with another sampled
+   * station's. A general call starts every one-shot ADC on the bus, so
+   * stations sharing a bus would trigger each other's conversions.
+   *
+   * @param i index of the station
+   * @return true if another station samples ADCs on the same bus
+   */
+  private boolean sharesBus(int i) {
+    for (int j = 0; j < stations.length; j++) {
+      if (j == i || (!REPLAY_FILE.isEmpty() && j == 0)) continue; // the replayed station doesn't sample
+      if (stations[j].getBus() == stations[i].getBus()) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Starts updating the values once the hardware is ready. When training a
+   * class archive it also builds the shunt scene and quits after a few ticks
+   * so the archive holds the classes a normal start loads.
+   *
+   * @param error why the hardware failed to start, null if it started
+   */
+  private void hardwareStarted(Throwable error) {
+    if (error != null) {
+      //the values won't update, so say why on the screen too
+      Throwable cause = error.getCause() != null ? error.getCause() : error;
+      String message = "Hardware Not Responding: " + describe(cause);
+      System.out.println(message);
+      metrics_label.setText(message);
+      metrics_label.setVisible(true);
+    } else {
+      //the streams record the state before the first sample the UI takes
+      for (Station s : stations) if (s.getStream() != null) s.getStream().state(s.getForces());
+      timeline.play();
+    }
+    if (EXIT_AFTER_STARTUP) {
+      getShuntScene();
+      Timeline exit = new Timeline(new KeyFrame(Duration.seconds(2), e -> Platform.exit()));
+      exit.play();
+    }
+  }
+
+  /**
+   * Returns what went wrong, for messages.
+   *
+   * @param error the error
+   * @return its message, or its class if it has none
+   */
+  private static String describe(Throwable error) {
+    return error.getMessage() != null ? error.getMessage() : error.toString();
+  }
+
+  /**
+   * Sets the background image of the main scene. The image is decoded on a
+   * background thread at the screen size and appears once it is loaded.
+   *
+   * @param root root node of the main scene
+   */
+  private void setBackgroundImage(Region root) {
+    File file = new File(BACKGROUND_IMAGE);
+    if (!file.isFile()) {
+      System.out.println("Background image not found: " + BACKGROUND_IMAGE);
+      return;
+    }
+    Rectangle2D screen = Screen.getPrimary().getBounds();
+    root.setBackground(
+      new Background(
+        new BackgroundImage(
+          new Image(file.toURI().toString(), screen.getWidth(), screen.getHeight(), true, true, true),
+          BackgroundRepeat.NO_REPEAT,
+          BackgroundRepeat.NO_REPEAT,
+          BackgroundPosition.DEFAULT,
+          new BackgroundSize(
+            BackgroundSize.AUTO,
+            BackgroundSize.AUTO,
+            true,
+            true,
+            false,
+            true
+          )
+        )
+      )
+    );
+  }
+
+  /**
+   * Returns the shunt scene, building it the first time.
+   *
+   * @return the shunt scene
+   */
+  private Scene getShuntScene() {
+    if (shunt_scene != null) return shunt_scene;
 
     //setup shunt scene
     //The root node
@@ -840,11 +1099,35 @@ public class Main extends Application {
     //shunt equivalent text boxes
     shunt_root.add(getShuntEqBox(), 1, 0, 2, 2);
 
-    // The top level JavaFX container
-    stage.setTitle("3D Arm Demo");
-    stage.setScene(main_scene);
-    stage.setMaximized(true);
-    stage.show();
+    return shunt_scene;
+  }
+
+  /**
+   * Stops the sampling or replay, LED and bell threads, closes the recording,
+   * prints the LED strip frame counters and metrics and releases the hardware
+   * when the application closes.
+   *
+   * @throws InterruptedException if the thread gets interrupted
+   */
+  @Override
+  public void stop() throws InterruptedException {
+    synchronized (startup) {
+      stopping = true;
+    }
+    try {
+      if (hardware_started != null) hardware_started.get(5, TimeUnit.SECONDS);
+    } catch (ExecutionException e) {
+      System.out.println("Stopping after the hardware failed to start: " + describe(e.getCause()));
+    } catch (TimeoutException e) {
+      System.out.println("Stopping while the hardware is still starting, it is released when it gets this far");
+    }
+    boolean running;
+    synchronized (startup) {
+      running = hardware_running;
+    }
+    if (running) releaseHardware(); // otherwise startHardware() released it, or will
+    System.out.println(metrics.report(getDropped()));
+    if (update_errors > 0) System.out.println("Updates failed: " + update_errors);
   }
 
   /**
@@ -0,0 +1,197 @@
+import java.io.*;
+
+/**
+ * This class is a driver for an MCP342x delta-sigma ADC on the I2C bus.
+ * The device is configured once and each read checks the RDY bit so only
+ * fresh conversions are returned.
+ */
+public class Mcp342x implements ForceSensor {
+
+  //ADC Commands
+  public static final byte CMD_NEW_CNVRSN = (byte) 0x80; // Initiate a new conversion(One-Shot Conversion mode only)
+  public static final byte CMD_MODE_CONT = 0x10; // Continuous Conversion Mode
+  public static final byte CMD_MODE_ONESHOT = 0x00; // One-Shot Conversion Mode
+  public static final byte CMD_CH_1 = 0x00; // Channel 1
+  public static final byte CMD_CH_2 = 0x20; // Channel 2
+  public static final byte CMD_CH_3 = 0x40; // Channel 3
+  public static final byte CMD_CH_4 = 0x60; // Channel 4
+  public static final byte CMD_SPS_240 = 0x00; // 240 SPS (12-bit)
+  public static final byte CMD_SPS_60 = 0x04; // 60 SPS (14-bit)
+  public static final byte CMD_SPS_15 = 0x08; // 15 SPS (16-bit)
+  public static final byte CMD_SPS_3 = 0x0C; // 3.75 SPS (18-bit)
+  public static final byte CMD_GAIN_1 = 0x00; // PGA Gain = 1V/V
+  public static final byte CMD_GAIN_2 = 0x01; // PGA Gain = 2V/V
+  public static final byte CMD_GAIN_4 = 0x02; // PGA Gain = 4V/V
+  public static final byte CMD_GAIN_8 = 0x03; // PGA Gain = 8V/V
+  public static final byte CMD_READ_CNVRSN = 0x00; // Read Conversion Result Data
+
+  public static final int GENERAL_CALL_ADDRESS = 0x00; // i2c general call address
+  public static final byte GENERAL_CALL_CONVERSION = 0x08; // Start a conversion on every one-shot ADC on the bus
+
+  private static final int RDY_BIT = 0x80; // set while the output register holds an old result
+  private static final float[] SPS = { 240f, 60f, 15f, 3.75f }; // conversion rate for each SPS setting
+
+  private final I2cBusExecutor.Device device; // i2c device, run on its bus's thread
+  private final byte config; // configuration command
+  private final int bits; // resolution of a conversion
+  private final int gain; // PGA gain
+  private final long conversion_ns; // time for one conversion
+  private final byte data[]; // conversion result followed by the config byte
+  private int raw = 0; // last conversion in ADC counts
+
+  /**
+   * Constructs a driver for an ADC. Call configure() before reading.
+   *
+   * @param device the i2c device of the ADC
+   * @param config configuration command (channel, mode, rate and gain)
+   */
+  public Mcp342x(I2cBusExecutor.Device device, byte config) {
+    this.device = device;
+    this.config = config;
+    bits = bitsOf(config);
+    gain = gainOf(config);
+    conversion_ns = conversionTimeOf(config);
+    data = new byte[bits == 18 ? 4 : 3];
+  }
+
+  /**
+   * Returns the resolution selected by a configuration command.
+   *
+   * @param config configuration command
+   * @return the number of bits per conversion
+   */
+  public static int bitsOf(byte config) {
+    return 12 + 2 * ((config >> 2) & 0x3);
+  }
+
+  /**
+   * Returns the PGA gain selected by a configuration command.
+   *
+   * @param config configuration command
+   * @return the gain in V/V
+   */
+  public static int gainOf(byte config) {
+    return 1 << (config & 0x3);
+  }
+
+  /**
+   * Returns the conversion time selected by a configuration command.
+   *
+   * @param config configuration command
+   * @return the conversion period in ns
+   */
+  public static long conversionTimeOf(byte config) {
+    return (long) (1e9 / SPS[(config >> 2) & 0x3]);
+  }
+
+  /**
+   * Writes the configuration command to the ADC. In continuous mode this only
+   * has to be done once.
+   *
+   * @throws IOException if the write fails
+   */
+  @Override
+  public void configure() throws IOException {
+    device.write((byte) (config & ~CMD_NEW_CNVRSN));
+  }
+
+  /**
+   * Opens the device again through the bus and writes the configuration.
+   *
+   * @throws IOException if the device still doesn't answer
+   */
+  @Override
+  public void reopen() throws IOException {
+    device.reopen();
+    configure();
+  }
+
+  /**
+   * Starts a single conversion. Only needed in one-shot mode.
+   *
+   * @throws IOException if the write fails
+   */
+  @Override
+  public void startConversion() throws IOException {
+    device.write((byte) (config | CMD_NEW_CNVRSN));
+  }
+
+  /**
+   * Returns whether the ADC is configured for one-shot conversions.
+   *
+   * @return true in one-shot mode, false in continuous mode
+   */
+  @Override
+  public boolean isOneShot() {
+    return (config & CMD_MODE_CONT) == 0;
+  }
+
+  /**
+   * Reads the output register once and keeps the conversion if it is new.
+   *
+   * @return true if a new conversion was read, false if the RDY bit shows an old result
+   * @throws IOException if the read fails
+   */
+  @Override
+  public boolean poll() throws IOException {
+    if (device.read(data, 0, data.length) != data.length || (data[data.length - 1] & RDY_BIT) != 0) return false;
+    raw = decode(data, bits);
+    return true;
+  }
+
+  /**
+   * Converts the output register bytes into a signed count.
+   *
+   * @param data output register bytes, most significant first
+   * @param bits resolution of the conversion
+   * @return the conversion in ADC counts
+   */
+  public static int decode(byte[] data, int bits) {
+    int value = bits == 18
+      ? ((data[0] & 0xFF) << 16) | ((data[1] & 0xFF) << 8) | (data[2] & 0xFF)
+      : ((data[0] & 0xFF) << 8) | (data[1] & 0xFF);
+    int shift = 32 - bits;
+    return (value << shift) >> shift; // sign extend
+  }
+
+  /**
+   * Returns the last conversion in ADC counts.
+   *
+   * @return the raw conversion
+   */
+  @Override
+  public int getRaw() {
+    return raw;
+  }
+
+  /**
+   * Returns the last conversion in volts at the input.
+   *
+   * @return the voltage
+   */
+  @Override
+  public float getVoltage() {
+    return toVoltage(raw);
+  }
+
+  /**
+   * Converts ADC counts to volts for this ADC's resolution and gain.
+   *
+   * @param counts conversion in ADC counts
+   * @return the voltage
+   */
+  @Override
+  public float toVoltage(int counts) {
+    return counts * 2.048f / (1 << (bits - 1)) / gain;
+  }
+
+  /**
+   * Returns the time one conversion takes.
+   *
+   * @return the conversion period in ns
+   */
+  @Override
+  public long getConversionTime() {
+    return conversion_ns;
+  }
+}
@@ -0,0 +1,88 @@
+import com.pi4j.io.gpio.*;
+import com.pi4j.io.i2c.*;
+import com.pi4j.io.i2c.I2CFactory.UnsupportedBusNumberException;
+import com.pi4j.io.spi.SpiChannel;
+import com.pi4j.io.spi.SpiFactory;
+import java.io.*;
+import java.util.*;
+
+/**
+ * This class is the Raspberry Pi hardware: MCP342x ADCs on the I2C buses,
+ * DotStar strips on the SPI chip selects and bells on GPIO pins. Each bus
+ * and pin is opened the first time a station asks for it, and each bus's
+ * transactions run on its own I2cBusExecutor thread.
+ */
+public class Pi4jHardware implements Hardware {
+
+  private final GpioController gpio; // GPIO controller
+  private final Map<Integer, I2cBusExecutor> buses = new HashMap<>(); // open i2c buses by number
+  private final Map<Integer, GpioPinDigitalOutput> bell_pins = new HashMap<>(); // bell pins, provisioned on first use
+
+  /**
+   * Opens the GPIO controller.
+   */
+  public Pi4jHardware() {
+    gpio = GpioFactory.getInstance();
+  }
+
+  @Override
+  public synchronized I2cBusExecutor getBusExecutor(int number) throws IOException {
+    I2cBusExecutor bus = buses.get(number);
+    if (bus == null) {
+      try {
+        bus = new I2cBusExecutor(I2CFactory.getInstance(number), Settings.getInt("i2c.timeout.ms", 20));
+      } catch (UnsupportedBusNumberException e) {
+        throw new IOException("I2C bus " + number + " not supported", e);
+      }
+      bus.start();
+      buses.put(number, bus);
+    }
+    return bus;
+  }
+
+  @Override
+  public ForceSensor getSensor(int bus, int address, byte config) throws IOException {
+    return new Mcp342x(getBusExecutor(bus).getDevice(address), config);
+  }
+
+  @Override
+  public ForceSensor.Latch getLatch(int bus) throws IOException {
+    I2cBusExecutor.Device general_call = getBusExecutor(bus).getDevice(Mcp342x.GENERAL_CALL_ADDRESS);
+    return () -> general_call.write(Mcp342x.GENERAL_CALL_CONVERSION);
+  }
+
+  @Override
+  public LedStrip getLedStrip(int chip_select, int num_leds) throws IOException {
+    SpiChannel channel = SpiChannel.getByNumber(chip_select);
+    if (channel == null) throw new IOException("No SPI chip select " + chip_select);
+    return new DotStar(num_leds, "BGR", SpiFactory.getInstance(channel, 8000000));
+  }
+
+  @Override
+  public synchronized BellOutput getBell(int number) {
+    GpioPinDigitalOutput pin = bell_pins.computeIfAbsent(
+      number,
+      n -> gpio.provisionDigitalOutputPin(RaspiPin.getPinByAddress(n), "Bell " + n, PinState.LOW)
+    );
+    return new BellOutput() {
+      @Override
+      public void high() {
+        pin.high();
+      }
+
+      @Override
+      public void low() {
+        pin.low();
+      }
+    };
+  }
+
+  @Override
+  public void close() {
+    for (I2cBusExecutor bus : buses.values()) {
+      bus.close();
+      System.out.println(bus.report());
+    }
+    gpio.shutdown();
+  }
+}
@@ -0,0 +1,141 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class collects the latency of each stage between an ADC conversion and
+ * what the visitor sees, plus the health of the sampling and UI loops. Every
+ * stage is measured from the sample's timestamp, so each histogram shows the
+ * total delay up to the end of that stage. Recording never locks or allocates
+ * and may happen on any thread.
+ */
+public class PipelineMetrics {
+
+  /**
+   * A point in the pipeline that is timed.
+   */
+  public enum Stage {
+    READ("I2C read"), // sampling thread read every ADC
+    FORCE("force"), // UI thread converted the sample to lbf
+    LED("LED frame"), // render thread sent a frame showing the sample
+    CHART("chart"), // UI thread drew the sample on the chart
+    TICK_JITTER("UI tick jitter"); // UI tick lateness, not measured from a sample
+
+    private final String label; // name shown in reports
+
+    Stage(String label) {
+      this.label = label;
+    }
+  }
+
+  private final LatencyHistogram histograms[] = new LatencyHistogram[Stage.values().length]; // one per stage
+  private final AtomicLong late_samples = new AtomicLong(); // sampler ticks that started late
+  private long samples = 0; // samples that reached the UI thread
+  private long late_ticks = 0; // UI ticks more than half a period late
+  private long last_tick = 0; // time of the previous UI tick in ns
+  private long rate_time = 0; // start of the current sample rate window in ns
+  private long rate_samples = 0; // samples at the start of the sample rate window
+  private volatile float sample_rate = 0; // samples per second over the last window
+
+  /**
+   * Constructs empty metrics.
+   */
+  public PipelineMetrics() {
+    for (int i = 0; i < histograms.length; i++) histograms[i] = new LatencyHistogram();
+  }
+
+  /**
+   * Records the time from a sample to the end of a stage.
+   *
+   * @param stage the stage that just ended
+   * @param sample_time timestamp of the sample in ns
+   * @param now end of the stage in ns
+   */
+  public void record(Stage stage, long sample_time, long now) {
+    histograms[stage.ordinal()].record(now - sample_time);
+  }
+
+  /**
+   * Counts a sampler tick that started after its deadline. Called from the sampling thread.
+   */
+  public void lateSample() {
+    late_samples.incrementAndGet();
+  }
+
+  /**
+   * Counts samples that reached the UI. Called from the UI thread.
+   *
+   * @param count number of samples
+   */
+  public void addSamples(int count) {
+    samples += count;
+  }
+
+  /**
+   * Records the lateness of a UI tick and updates the sample rate about once
+   * a second. Called from the UI thread at the start of every tick.
+   *
+   * @param now time of the tick in ns
+   * @param period expected time between ticks in ns
+   */
+  public void tick(long now, long period) {
+    if (last_tick != 0) {
+      long late = now - last_tick - period;
+      histograms[Stage.TICK_JITTER.ordinal()].record(Math.abs(late));
+      if (late > period / 2) late_ticks++;
+    }
+    last_tick = now;
+
+    if (rate_time == 0) {
+      rate_time = now;
+      rate_samples = samples;
+    } else if (now - rate_time >= 1000000000L) {
+      sample_rate = (samples - rate_samples) * 1e9f / (now - rate_time);
+      rate_time = now;
+      rate_samples = samples;
+    }
+  }
+
+  /**
+   * Returns the histogram of a stage.
+   *
+   * @param stage the stage
+   * @return its histogram
+   */
+  public LatencyHistogram getHistogram(Stage stage) {
+    return histograms[stage.ordinal()];
+  }
+
+  /**
+   * Returns the samples per second that reached the UI over the last second.
+   *
+   * @return the achieved sample rate
+   */
+  public float getSampleRate() {
+    return sample_rate;
+  }
+
+  /**
+   * Formats the metrics as plain text, one stage per line with times in ms.
+   *
+   * @param dropped samples lost because the sample ring was full
+   * @return the report
+   */
+  public String report(long dropped) {
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format("%-15s %8s %8s %8s %8s%n", "stage", "p50", "p99", "max", "count"));
+    for (Stage stage : Stage.values()) {
+      LatencyHistogram h = histograms[stage.ordinal()];
+      sb.append(
+        String.format(
+          "%-15s %8.2f %8.2f %8.2f %8d%n",
+          stage.label,
+          h.getPercentile(50) / 1e6,
+          h.getPercentile(99) / 1e6,
+          h.getMax() / 1e6,
+          h.getCount()
+        )
+      );
+    }
+    sb.append(String.format("sample rate %.1f/s, dropped %d, late samples %d, late ticks %d", sample_rate, dropped, late_samples.get(), late_ticks));
+    return sb.toString();
+  }
+}
@@ -0,0 +1,269 @@
+/**
+ * This class finds pulls in the combined force one sample at a time. A pull
+ * starts when the force rises above the onset level and ends once it has
+ * stayed below the lower release level for a hold time, so noise and short
+ * dips don't split one pull into several. While a pull is going on only a
+ * few running values and the samples of a short window are kept, and when it
+ * ends exactly one Pull is returned with its true peak, time to peak,
+ * impulse and rate of force development. The peak rate of force development
+ * is the steepest least squares slope over the window rather than the rise
+ * between two samples, which is mostly noise. The slope comes from running
+ * sums that are updated as samples enter and leave the window, so each
+ * sample costs the same however many the window holds.
+ */
+public class PullDetector {
+
+  /**
+   * One finished pull.
+   */
+  public static class Pull {
+
+    private final long start; // time the force rose above the onset level in ns
+    private final float peak; // largest force in lbs
+    private final float time_to_peak; // seconds from the start to the peak
+    private final float duration; // seconds from the start to the release
+    private final float impulse; // force integrated over the pull in lbf*s
+    private final float rfd; // average rate of force development to the peak in lbf/s
+    private final float peak_rfd; // steepest rise over the RFD window in lbf/s
+
+    Pull(long start, float peak, float time_to_peak, float duration, float impulse, float rfd, float peak_rfd) {
+      this.start = start;
+      this.peak = peak;
+      this.time_to_peak = time_to_peak;
+      this.duration = duration;
+      this.impulse = impulse;
+      this.rfd = rfd;
+      this.peak_rfd = peak_rfd;
+    }
+
+    /**
+     * Returns when the pull started.
+     *
+     * @return the time the force rose above the onset level in ns
+     */
+    public long getStart() {
+      return start;
+    }
+
+    /**
+     * Returns the largest force of the pull.
+     *
+     * @return the peak in lbs
+     */
+    public float getPeak() {
+      return peak;
+    }
+
+    /**
+     * Returns the time from the start of the pull to its peak.
+     *
+     * @return the time to peak in seconds
+     */
+    public float getTimeToPeak() {
+      return time_to_peak;
+    }
+
+    /**
+     * Returns the time from the start of the pull to its release.
+     *
+     * @return the duration in seconds
+     */
+    public float getDuration() {
+      return duration;
+    }
+
+    /**
+     * Returns the force integrated over the pull.
+     *
+     * @return the impulse in lbf*s
+     */
+    public float getImpulse() {
+      return impulse;
+    }
+
+    /**
+     * Returns the average rate of force development from the start to the peak.
+     *
+     * @return the rate in lbf/s
+     */
+    public float getRfd() {
+      return rfd;
+    }
+
+    /**
+     * Returns the steepest rise in force over the RFD window, 0 if the pull
+     * was shorter than the window.
+     *
+     * @return the rate in lbf/s
+     */
+    public float getPeakRfd() {
+      return peak_rfd;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+        "peak %.2flbf, time to peak %.3fs, duration %.3fs, impulse %.2flbf*s, rfd %.1flbf/s, peak rfd %.1flbf/s",
+        peak,
+        time_to_peak,
+        duration,
+        impulse,
+        rfd,
+        peak_rfd
+      );
+    }
+  }
+
+  private static final int RFD_SAMPLES = 256; // most samples kept for the RFD window, a power of two
+
+  private final float onset; // force that starts a pull in lbs
+  private final float release; // force that ends a pull in lbs
+  private final long hold; // time below the release level that ends a pull in ns
+  private final long rfd_window; // time the peak rate of force development is measured over in ns
+
+  // samples of the last RFD window of the pull, oldest overwritten first
+  private final long rfd_times[] = new long[RFD_SAMPLES]; // timestamps in ns
+  private final float rfd_forces[] = new float[RFD_SAMPLES]; // forces in lbs
+  private int rfd_oldest = 0; // number of the oldest kept sample
+  private int rfd_next = 0; // number of the next sample
+  // sums over the kept samples for the least squares slope, t in seconds since the start of the pull
+  private double sum_t = 0; // sum of t
+  private double sum_f = 0; // sum of the forces
+  private double sum_tt = 0; // sum of t squared
+  private double sum_tf = 0; // sum of t times the force
+
+  private boolean pulling = false; // is a pull going on
+  private long start = 0; // start of the pull in ns
+  private float start_force = 0; // force at the start of the pull
+  private float peak = 0; // largest force so far
+  private long peak_time = 0; // time of the peak in ns
+  private double impulse = 0; // force integrated so far in lbf*s
+  private float peak_rfd = 0; // steepest rise so far in lbf/s
+  private long below_since = -1; // time the force fell below the release level in ns, -1 if above
+  private double release_impulse = 0; // impulse when the force fell below the release level
+  private long last_time = 0; // time of the previous sample in ns
+  private float last_force = 0; // force of the previous sample
+
+  /**
+   * Constructs a detector.
+   *
+   * @param onset force that starts a pull in lbs
+   * @param release force that ends a pull in lbs, at most onset
+   * @param hold_ms time the force must stay below release to end a pull in ms
+   * @param rfd_window_ms time the peak rate of force development is measured over in ms
+   */
+  public PullDetector(float onset, float release, long hold_ms, long rfd_window_ms) {
+    this.onset = onset;
+    this.release = Math.min(release, onset);
+    this.hold = hold_ms * 1000000L;
+    this.rfd_window = Math.max(1, rfd_window_ms) * 1000000L;
+  }
+
+  /**
+   * Adds one sample.
+   *
+   * @param time timestamp of the sample in ns
+   * @param force combined force in lbs
+   * @return the pull that this sample ended, or null
+   */
+  public Pull add(long time, float force) {
+    Pull ended = null;
+    if (!pulling) {
+      if (force > onset) {
+        pulling = true;
+        start = time;
+        start_force = force;
+        peak = force;
+        peak_time = time;
+        impulse = 0;
+        peak_rfd = 0;
+        below_since = -1;
+        rfd_oldest = rfd_next = 0;
+        sum_t = sum_f = sum_tt = sum_tf = 0;
+        addRfd(time, force);
+      }
+    } else {
+      float dt = (time - last_time) / 1e9f;
+      impulse += 0.5 * (force + last_force) * dt;
+      addRfd(time, force);
+      if (force > peak) {
+        peak = force;
+        peak_time = time;
+      }
+      if (force >= release) {
+        below_since = -1;
+      } else if (below_since < 0) {
+        below_since = time;
+        release_impulse = impulse;
+      } else if (time - below_since >= hold) {
+        pulling = false;
+        float time_to_peak = (peak_time - start) / 1e9f;
+        ended = new Pull(
+          start,
+          peak,
+          time_to_peak,
+          (below_since - start) / 1e9f,
+          (float) release_impulse,
+          time_to_peak > 0 ? (peak - start_force) / time_to_peak : 0,
+          peak_rfd
+        );
+      }
+    }
+    last_time = time;
+    last_force = force;
+    return ended;
+  }
+
+  /**
+   * Keeps a sample of the pull and raises the peak rate of force development
+   * to the least squares slope of the samples of the last window, if that is steeper.
+   *
+   * @param time timestamp of the sample in ns
+   * @param force combined force in lbs
+   */
+  private void addRfd(long time, float force) {
+    if (rfd_next - rfd_oldest == RFD_SAMPLES) dropRfd();
+    rfd_times[rfd_next & (RFD_SAMPLES - 1)] = time;
+    rfd_forces[rfd_next & (RFD_SAMPLES - 1)] = force;
+    rfd_next++;
+    double t = (time - start) / 1e9;
+    sum_t += t;
+    sum_f += force;
+    sum_tt += t * t;
+    sum_tf += t * force;
+    while (rfd_next - rfd_oldest > 1 && time - rfd_times[(rfd_oldest + 1) & (RFD_SAMPLES - 1)] >= rfd_window) dropRfd();
+    if (time - rfd_times[rfd_oldest & (RFD_SAMPLES - 1)] < rfd_window) return;
+    int n = rfd_next - rfd_oldest;
+    double spread = n * sum_tt - sum_t * sum_t;
+    if (spread > 0) peak_rfd = Math.max(peak_rfd, (float) ((n * sum_tf - sum_t * sum_f) / spread));
+  }
+
+  /**
+   * Takes the oldest kept sample out of the window and its sums.
+   */
+  private void dropRfd() {
+    double t = (rfd_times[rfd_oldest & (RFD_SAMPLES - 1)] - start) / 1e9;
+    float force = rfd_forces[rfd_oldest & (RFD_SAMPLES - 1)];
+    sum_t -= t;
+    sum_f -= force;
+    sum_tt -= t * t;
+    sum_tf -= t * force;
+    rfd_oldest++;
+  }
+
+  /**
+   * Returns whether a pull is going on.
+   *
+   * @return true between the onset and the release
+   */
+  public boolean isPulling() {
+    return pulling;
+  }
+
+  /**
+   * Forgets the pull going on, e.g. after the forces are zeroed.
+   */
+  public void reset() {
+    pulling = false;
+  }
+}
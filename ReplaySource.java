@@ -0,0 +1,217 @@
+import java.io.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class plays a recorded session back in place of the ADCs. On its own
+ * thread it publishes the recorded samples into the SampleRings the sampler
+ * would fill, so the live force, high score, LED and chart code runs on them
+ * unchanged. The recorded offsets, sensitivities and high score are handed
+ * to the UI thread with the number of the sample they come before, so they
+ * take effect at exactly the same point as when the session was recorded.
+ *
+ * Playback can be real-time, N times faster, or as fast as the pipeline
+ * takes the samples. The speed only paces the publishing: the samples keep
+ * their recorded spacing in time, so pulls, impulse and rate of force
+ * development come out the same at every speed. Only at real-time are the
+ * latency metrics meaningful. Run main() to replay a session headless and measure the
+ * pipeline throughput and high score detection without JavaFX.
+ */
+public class ReplaySource implements Runnable {
+
+  /**
+   * Recorded state waiting for the UI thread.
+   */
+  private static class PendingState {
+
+    private final SessionReader.State state; // the recorded state
+    private final long index; // number of the sample it comes before
+
+    PendingState(SessionReader.State state, long index) {
+      this.state = state;
+      this.index = index;
+    }
+  }
+
+  private static final long FULL_WAIT = 100000; // wait for the UI to drain a full ring in ns
+
+  private final SessionReader reader; // recorded session
+  private final SampleRing ring; // where samples are published
+  private final SampleRing stream; // where every sample is also published, null for nowhere
+  private final float speed; // playback speed, 0 for as fast as possible
+  private final ConcurrentLinkedQueue<PendingState> states = new ConcurrentLinkedQueue<>(); // recorded states for the UI thread
+  private long published = 0; // samples published, only touched by the replay thread
+  private long applied = 0; // samples passed to apply(), only touched by the UI thread
+  private volatile boolean running = false; // is the thread replaying
+  private Thread thread; // replay thread
+
+  /**
+   * Constructs a replay of a recorded session.
+   *
+   * @param reader the recorded session
+   * @param ring ring the samples are published to
+   * @param stream second ring the samples are published to, null for none
+   * @param speed 1 for real-time, N for N times faster, 0 for as fast as possible
+   */
+  public ReplaySource(SessionReader reader, SampleRing ring, SampleRing stream, float speed) {
+    this.reader = reader;
+    this.ring = ring;
+    this.stream = stream;
+    this.speed = speed;
+  }
+
+  /**
+   * Starts the replay thread.
+   */
+  public void start() {
+    running = true;
+    thread = new Thread(this, "replay");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Stops the replay thread and waits for it to finish.
+   *
+   * @throws InterruptedException if the current thread is interrupted
+   */
+  public void stop() throws InterruptedException {
+    running = false;
+    if (thread != null) {
+      LockSupport.unpark(thread);
+      thread.join(1000);
+    }
+    reader.close();
+  }
+
+  /**
+   * Applies the recorded state that comes before the next sample. The UI
+   * thread must call this once before handling each sample it polls.
+   *
+   * @param forces pipeline the samples go through
+   * @return true if the state of the pipeline changed
+   */
+  public boolean apply(ForcePipeline forces) {
+    boolean changed = false;
+    PendingState pending;
+    while ((pending = states.peek()) != null && pending.index <= applied) {
+      states.poll();
+      pending.state.apply(forces);
+      changed = true;
+    }
+    applied++;
+    return changed;
+  }
+
+  /**
+   * Publishes the recorded samples at the playback speed until the recording
+   * ends or the replay is stopped, then prints the throughput.
+   */
+  @Override
+  public void run() {
+    long start = System.nanoTime();
+    try {
+      long first = -1;
+      while (running && reader.next()) {
+        byte type = reader.getType();
+        if (type == SessionRecorder.STATE) {
+          states.add(new PendingState(reader.getState(), published));
+        } else if (type == SessionRecorder.SAMPLE) {
+          if (first < 0) first = reader.getTime();
+          long stamp = start + (reader.getTime() - first); // recorded time, moved to the start of the replay
+          if (speed > 0) {
+            long wait = start + (long) ((reader.getTime() - first) / speed) - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+          }
+          while (running && ring.size() >= ring.getCapacity()) LockSupport.parkNanos(FULL_WAIT);
+          if (stream != null) stream.offer(
+            stamp,
+            reader.getVoltage(ForcePipeline.X),
+            reader.getVoltage(ForcePipeline.Y),
+            reader.getVoltage(ForcePipeline.Z),
+            reader.getRaw(ForcePipeline.X),
+            reader.getRaw(ForcePipeline.Y),
+            reader.getRaw(ForcePipeline.Z)
+          );
+          ring.offer(
+            stamp,
+            reader.getVoltage(ForcePipeline.X),
+            reader.getVoltage(ForcePipeline.Y),
+            reader.getVoltage(ForcePipeline.Z),
+            reader.getRaw(ForcePipeline.X),
+            reader.getRaw(ForcePipeline.Y),
+            reader.getRaw(ForcePipeline.Z)
+          );
+          published++;
+        }
+      }
+    } catch (IOException e) {
+      System.out.println("Replay failed: " + e.getMessage());
+    }
+    long elapsed = System.nanoTime() - start;
+    System.out.println(String.format("Replayed %d samples in %.1fs (%.0f samples/s)", published, elapsed / 1e9, published * 1e9 / elapsed));
+  }
+
+  /**
+   * Replays a recorded session through the force pipeline without a UI and
+   * prints the throughput and every high score. High scores that differ from
+   * the ones flagged in the recording are marked, which shows changes in
+   * detection between versions.
+   *
+   * @param args the recording (a segment file or directory), then the speed,
+   *             1 for real-time, N for N times faster, 0 (the default) for as fast as possible
+   * @throws IOException if the recording can't be read
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1) {
+      System.out.println("Usage: java ReplaySource <recording> [speed]");
+      return;
+    }
+    float speed = args.length > 1 ? Float.parseFloat(args[1]) : 0;
+    float window = Settings.getFloat("chart.window.s", 2);
+    ForcePipeline forces = new ForcePipeline((int) (window * 240 * 2) + 16, window);
+    long samples = 0;
+    long high_scores = 0;
+    long recorded_high_scores = 0;
+    long mismatches = 0;
+    long first = -1;
+    long start = System.nanoTime();
+    try (SessionReader reader = new SessionReader(new File(args[0]))) {
+      while (reader.next()) {
+        byte type = reader.getType();
+        if (type == SessionRecorder.STATE) {
+          reader.applyState(forces);
+        } else if (type == SessionRecorder.SAMPLE) {
+          if (first < 0) first = reader.getTime();
+          if (speed > 0) {
+            long wait = start + (long) ((reader.getTime() - first) / speed) - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+          }
+          boolean high_score = forces.add(
+            reader.getTime(),
+            reader.getVoltage(ForcePipeline.X),
+            reader.getVoltage(ForcePipeline.Y),
+            reader.getVoltage(ForcePipeline.Z)
+          );
+          samples++;
+          if (reader.isHighScore()) recorded_high_scores++;
+          if (high_score) high_scores++;
+          if (high_score != reader.isHighScore()) mismatches++;
+          if (high_score || reader.isHighScore()) {
+            System.out.println(
+              String.format(
+                "%10.3fs %8.2flbf%s",
+                (reader.getTime() - first) / 1e9,
+                forces.getCombined(),
+                high_score == reader.isHighScore() ? "" : high_score ? " (new)" : " (recorded only)"
+              )
+            );
+          }
+        }
+      }
+    }
+    long elapsed = System.nanoTime() - start;
+    System.out.println(String.format("Replayed %d samples in %.3fs (%.0f samples/s)", samples, elapsed / 1e9, samples * 1e9 / elapsed));
+    System.out.println(String.format("High scores: %d, recorded: %d, differing: %d", high_scores, recorded_high_scores, mismatches));
+  }
+}
@@ -0,0 +1,133 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is a single-producer/single-consumer ring buffer of timestamped
+ * ADC samples, each holding the voltages and raw counts of every axis. The
+ * sampling thread offers samples and the JavaFX thread, or a SampleStream's
+ * thread, polls them without locks or allocation.
+ */
+public class SampleRing {
+
+  public static final int AXES = 3; // x, y and z
+  public static final int NO_RAW = -0x800000; // counts of an axis without a reading (its voltage is NaN), below every ADC's range
+
+  private final int mask; // index mask, capacity is a power of two
+  private final long times[]; // sample timestamps from System.nanoTime()
+  private final float values[]; // AXES voltages per sample
+  private final int raws[]; // AXES ADC counts per sample
+  private final AtomicLong head = new AtomicLong(); // next slot to read
+  private final AtomicLong tail = new AtomicLong(); // next slot to write
+  private final AtomicLong dropped = new AtomicLong(); // samples lost because the ring was full
+  private long polledTime = 0; // timestamp of the last polled sample
+  private final int polledRaw[] = new int[AXES]; // ADC counts of the last polled sample
+
+  /**
+   * Constructs a ring that holds at least the requested number of samples.
+   *
+   * @param capacity minimum number of samples, rounded up to a power of two
+   */
+  public SampleRing(int capacity) {
+    int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+    mask = size - 1;
+    times = new long[size];
+    values = new float[size * AXES];
+    raws = new int[size * AXES];
+  }
+
+  /**
+   * Adds a sample. Only the producer thread may call this.
+   *
+   * @param time timestamp of the sample in ns
+   * @param x voltage of the x axis
+   * @param y voltage of the y axis
+   * @param z voltage of the z axis
+   * @param raw_x ADC counts of the x axis
+   * @param raw_y ADC counts of the y axis
+   * @param raw_z ADC counts of the z axis
+   * @return false if the ring was full and the sample was dropped
+   */
+  public boolean offer(long time, float x, float y, float z, int raw_x, int raw_y, int raw_z) {
+    long t = tail.get();
+    if (t - head.get() > mask) {
+      dropped.incrementAndGet();
+      return false;
+    }
+    int slot = (int) t & mask;
+    times[slot] = time;
+    values[slot * AXES] = x;
+    values[slot * AXES + 1] = y;
+    values[slot * AXES + 2] = z;
+    raws[slot * AXES] = raw_x;
+    raws[slot * AXES + 1] = raw_y;
+    raws[slot * AXES + 2] = raw_z;
+    tail.lazySet(t + 1); // publish the slot
+    return true;
+  }
+
+  /**
+   * Removes the oldest sample. Only the consumer thread may call this.
+   *
+   * @param out array of at least AXES floats that receives the voltages
+   * @return false if the ring was empty
+   */
+  public boolean poll(float[] out) {
+    long h = head.get();
+    if (h == tail.get()) return false;
+    int slot = (int) h & mask;
+    polledTime = times[slot];
+    out[0] = values[slot * AXES];
+    out[1] = values[slot * AXES + 1];
+    out[2] = values[slot * AXES + 2];
+    polledRaw[0] = raws[slot * AXES];
+    polledRaw[1] = raws[slot * AXES + 1];
+    polledRaw[2] = raws[slot * AXES + 2];
+    head.lazySet(h + 1); // hand the slot back to the producer
+    return true;
+  }
+
+  /**
+   * Returns the timestamp of the sample returned by the last poll().
+   *
+   * @return the timestamp in ns
+   */
+  public long getPolledTime() {
+    return polledTime;
+  }
+
+  /**
+   * Returns the ADC counts of the sample returned by the last poll().
+   *
+   * @param axis 0, 1 or 2 for x, y or z
+   * @return the raw conversion
+   */
+  public int getPolledRaw(int axis) {
+    return polledRaw[axis];
+  }
+
+  /**
+   * Returns the number of samples the ring holds.
+   *
+   * @return the capacity
+   */
+  public int getCapacity() {
+    return mask + 1;
+  }
+
+  /**
+   * Returns the number of samples waiting to be polled.
+   *
+   * @return the number of queued samples
+   */
+  public int size() {
+    return (int) (tail.get() - head.get());
+  }
+
+  /**
+   * Returns the number of samples dropped because the consumer fell behind.
+   *
+   * @return the number of dropped samples
+   */
+  public long getDropped() {
+    return dropped.get();
+  }
+}
@@ -0,0 +1,215 @@
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class records and streams every sample of a station on its own
+ * thread, straight from the sampler (or the replay). The sampler offers each
+ * sample to the stream's ring as well as to the UI's, so samples the UI ring
+ * drops while the UI stalls are still recorded, and rolling over to a new
+ * segment never holds up a frame.
+ *
+ * The forces, high scores and states come from the station's own
+ * ForcePipeline on the UI thread, never from a second one: the UI thread
+ * hands the forces of every sample it runs through the pipeline to the
+ * stream, and its offsets, sensitivities and high score whenever they change
+ * other than by a sample. A raw sample is held until the UI has passed it,
+ * so it is recorded with the high score flag the UI gave it, and each state
+ * lands between the same two samples it did on the UI thread. Samples the UI
+ * dropped are recorded without a flag. The telemetry sends the forces the UI
+ * computed, so it shows the same numbers as the screen.
+ */
+public class SampleStream implements Runnable {
+
+  /**
+   * State from the UI thread waiting to be recorded.
+   */
+  private static class PendingState {
+
+    private final SessionReader.State state; // the new state
+    private final long time; // timestamp of the last sample the UI handled before it
+
+    PendingState(SessionReader.State state, long time) {
+      this.state = state;
+      this.time = time;
+    }
+  }
+
+  private final SampleRing ring; // samples from the sampler, polled by the stream thread
+  private final ForceRing forces; // forces of each sample from the UI thread, polled by the stream thread
+  private final SessionRecorder recorder; // where the samples are recorded, null if not recording
+  private final TelemetrySender telemetry; // where the forces are sent, null if not streaming
+  private final long period; // wait between draining the rings in ns
+  private final int hold; // most samples held back waiting for the UI
+  private final ConcurrentLinkedQueue<PendingState> states = new ConcurrentLinkedQueue<>(); // states from the UI thread
+  private volatile long handled = 0; // timestamp of the last sample the UI ran through its pipeline
+  private long restarts = 0; // pull detection restarts already handed over, only touched by the UI thread
+  private final float sample[] = new float[SampleRing.AXES]; // voltages of the polled sample
+  private boolean sample_held = false; // is the last polled sample waiting to be recorded
+  private boolean forces_held = false; // are the last polled forces waiting to be sent
+  private volatile boolean running = false; // is the thread running
+  private Thread thread; // stream thread
+
+  /**
+   * Constructs a stream.
+   *
+   * @param recorder recorder of the samples, null for none
+   * @param telemetry sender of the forces, already started, null for none
+   * @param capacity samples the stream may fall behind the sampler, and the UI, by
+   * @param rate_hz samples per second, how often the rings are drained
+   */
+  public SampleStream(SessionRecorder recorder, TelemetrySender telemetry, int capacity, float rate_hz) {
+    this.recorder = recorder;
+    this.telemetry = telemetry;
+    ring = new SampleRing(capacity);
+    forces = new ForceRing(capacity);
+    hold = ring.getCapacity() / 2;
+    period = (long) (1e9 / rate_hz);
+  }
+
+  /**
+   * Returns the ring the sampler publishes to.
+   *
+   * @return the ring
+   */
+  public SampleRing getRing() {
+    return ring;
+  }
+
+  /**
+   * Starts the stream thread.
+   */
+  public void start() {
+    running = true;
+    thread = new Thread(this, "stream");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Handles the samples left in the rings, stops the stream thread, closes
+   * the recording and stops the telemetry. Stop the sampler first.
+   *
+   * @throws InterruptedException if the current thread is interrupted
+   */
+  public void stop() throws InterruptedException {
+    running = false;
+    if (thread != null) {
+      LockSupport.unpark(thread);
+      thread.join(1000);
+    }
+    if (recorder != null) recorder.close();
+    if (telemetry != null) telemetry.stop();
+  }
+
+  /**
+   * Returns the sender of the forces.
+   *
+   * @return the sender, null when not streaming
+   */
+  public TelemetrySender getTelemetry() {
+    return telemetry;
+  }
+
+  /**
+   * Hands over the forces of a sample the UI thread just ran through the
+   * station's pipeline. Call from the UI thread for every sample, in order.
+   *
+   * @param time timestamp of the sample in ns
+   * @param station_forces the station's pipeline
+   * @param high_score did the sample set a new high score
+   */
+  public void sample(long time, ForcePipeline station_forces, boolean high_score) {
+    forces.offer(time, station_forces, high_score);
+    handled = time;
+  }
+
+  /**
+   * Hands over the offsets, sensitivities and high score of the station's
+   * pipeline. Call from the UI thread after any of them change other than by
+   * a sample; they are recorded after the last sample handed over.
+   *
+   * @param station_forces the station's pipeline
+   */
+  public void state(ForcePipeline station_forces) {
+    boolean restart = station_forces.getRestarts() != restarts;
+    restarts = station_forces.getRestarts();
+    states.add(new PendingState(new SessionReader.State(station_forces, restart), handled));
+  }
+
+  /**
+   * Returns the number of samples dropped because the stream fell behind.
+   *
+   * @return the number of dropped samples
+   */
+  public long getDropped() {
+    return ring.getDropped() + forces.getDropped();
+  }
+
+  /**
+   * Drains the rings once per sample period until stopped.
+   */
+  @Override
+  public void run() {
+    while (running) {
+      LockSupport.parkNanos(period);
+      drain(handled);
+    }
+    drain(Long.MAX_VALUE);
+  }
+
+  /**
+   * Records every sample the UI has handled, with the states between them,
+   * and sends their forces.
+   *
+   * @param done timestamp of the last sample the UI handled, later samples are
+   *             held back unless too many are waiting
+   */
+  private void drain(long done) {
+    while (true) {
+      if (!sample_held) sample_held = ring.poll(sample);
+      long time = sample_held ? ring.getPolledTime() : Long.MAX_VALUE;
+      PendingState pending;
+      while ((pending = states.peek()) != null && pending.time < time && pending.time <= done) {
+        states.poll();
+        if (recorder != null) recorder.state(pending.state);
+      }
+      if (!sample_held || (time > done && ring.size() < hold)) break;
+      float new_high_score = send(time);
+      if (recorder != null) recorder.sample(
+        time,
+        ring.getPolledRaw(0),
+        ring.getPolledRaw(1),
+        ring.getPolledRaw(2),
+        new_high_score
+      );
+      sample_held = false;
+    }
+    send(done);
+  }
+
+  /**
+   * Sends the forces the UI computed up to a sample.
+   *
+   * @param time timestamp of the sample in ns
+   * @return the high score the UI found the sample set in lbs, 0 if it set none
+   */
+  private float send(long time) {
+    float new_high_score = 0;
+    while (forces_held || (forces_held = forces.poll())) {
+      long forces_time = forces.getPolledTime();
+      if (forces_time > time) break;
+      if (forces_time == time && forces.isPolledNewHighScore()) new_high_score = forces.getPolledHighScore();
+      if (telemetry != null) telemetry.sample(
+        forces_time,
+        forces.getPolledPounds(ForcePipeline.X),
+        forces.getPolledPounds(ForcePipeline.Y),
+        forces.getPolledPounds(ForcePipeline.Z),
+        forces.getPolledCombined(),
+        forces.getPolledHighScore(),
+        forces.isPolledNewHighScore()
+      );
+      forces_held = false;
+    }
+    return new_high_score;
+  }
+}
@@ -0,0 +1,123 @@
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class runs the AdcSamplers of every station on one thread. Each
+ * sampler says when it next needs the bus, and the scheduler always runs
+ * the step that is due first (earliest deadline first). A step is one short
+ * I2C transaction per axis and never waits for a conversion, so one
+ * station's conversions run while another station is read, and every
+ * station keeps its own sample rate as long as the bus isn't saturated.
+ * The share of time spent on the bus is checked every second and a warning
+ * is printed when the stations ask for more than the bus can give.
+ */
+public class SamplingScheduler implements Runnable {
+
+  private static final long CHECK_PERIOD = 1000000000L; // time between bus load checks in ns
+  private static final float MAX_LOAD = 0.9f; // share of time on the bus that leaves no slack
+
+  private final List<AdcSampler> samplers = new ArrayList<>(); // samplers of every station
+  private final int cpu; // cpu to pin the thread to, -1 for none
+  private volatile boolean running = false; // is the thread sampling
+  private Thread thread; // sampling thread
+
+  /**
+   * Constructs a scheduler.
+   *
+   * @param cpu cpu to pin the sampling thread to, -1 to let the OS choose
+   */
+  public SamplingScheduler(int cpu) {
+    this.cpu = cpu;
+  }
+
+  /**
+   * Adds a station's sampler. Only call before start().
+   *
+   * @param sampler the sampler
+   */
+  public void add(AdcSampler sampler) {
+    samplers.add(sampler);
+  }
+
+  /**
+   * Starts the sampling thread.
+   */
+  public void start() {
+    running = true;
+    thread = new Thread(this, "adc-sampler");
+    thread.setDaemon(true);
+    thread.setPriority(Thread.MAX_PRIORITY);
+    thread.start();
+  }
+
+  /**
+   * Stops the sampling thread and waits for it to finish.
+   *
+   * @throws InterruptedException if the current thread is interrupted
+   */
+  public void stop() throws InterruptedException {
+    running = false;
+    if (thread != null) {
+      LockSupport.unpark(thread);
+      thread.join(1000);
+    }
+  }
+
+  /**
+   * Runs the step that is due first until stopped, sleeping while none is due.
+   */
+  @Override
+  public void run() {
+    if (cpu >= 0) pin(cpu);
+    AdcSampler list[] = samplers.toArray(new AdcSampler[0]);
+    if (list.length == 0) return;
+    long busy = 0; // time spent in steps since the last check
+    long checked = System.nanoTime();
+    boolean overloaded = false;
+    while (running) {
+      AdcSampler next = list[0];
+      for (int i = 1; i < list.length; i++) {
+        if (list[i].getDue() - next.getDue() < 0) next = list[i];
+      }
+      long now = System.nanoTime();
+      long wait = next.getDue() - now;
+      if (wait > 0) {
+        LockSupport.parkNanos(wait);
+        continue;
+      }
+      next.step(now);
+      long done = System.nanoTime();
+      busy += done - now;
+      if (done - checked >= CHECK_PERIOD) {
+        float load = (float) busy / (done - checked);
+        if (load > MAX_LOAD && !overloaded) System.out.println(
+          String.format("Sampling Not Keeping Up: the bus is busy %.0f%% of the time, lower sample.rate.hz", load * 100)
+        );
+        overloaded = load > MAX_LOAD;
+        busy = 0;
+        checked = done;
+      }
+    }
+  }
+
+  /**
+   * Pins the calling thread to a cpu with taskset. Java has no affinity API, so
+   * this looks up the native thread id in /proc and is best-effort only.
+   *
+   * @param cpu cpu to pin to
+   */
+  private static void pin(int cpu) {
+    try {
+      Path self = Files.readSymbolicLink(Paths.get("/proc/thread-self"));
+      String tid = self.getFileName().toString();
+      Process p = new ProcessBuilder("taskset", "-cp", Integer.toString(cpu), tid)
+        .redirectErrorStream(true)
+        .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+        .start();
+      if (p.waitFor() != 0) System.out.println("Could not pin sampler to cpu " + cpu);
+    } catch (Exception e) {
+      System.out.println("Could not pin sampler to cpu " + cpu);
+    }
+  }
+}
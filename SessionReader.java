@@ -0,0 +1,335 @@
+import java.io.*;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * This class reads back the segments written by SessionRecorder one record at
+ * a time. It follows the SYNC and sample deltas to give every sample its
+ * absolute time, and keeps the offsets, sensitivities and high score from the
+ * latest AXIS and STATE records so samples can be turned back into volts and
+ * a pipeline can be put in the state the recording was made in.
+ */
+public class SessionReader implements Closeable {
+
+  /**
+   * Offsets, sensitivities and high score at one point of a recording, and
+   * whether the pull detection restarted there.
+   */
+  public static class State {
+
+    private final float offset[] = new float[ForcePipeline.AXES]; // voltage offset of each axis
+    private final float sensitivity[] = new float[ForcePipeline.AXES]; // sensitivity of each axis (lb/V)
+    private float high_score = 0; // high score in lbs
+    private boolean zeroed = false; // were the forces zeroed
+    private boolean calibrated = false; // were the sensitivities calibrated
+    private boolean restart = false; // did the pull detection restart with this state
+
+    /**
+     * Constructs a state with every value 0.
+     */
+    public State() {}
+
+    /**
+     * Constructs a copy of the state of a pipeline.
+     *
+     * @param forces the pipeline
+     * @param restart true if the pipeline restarted its pull detection since the last state
+     */
+    public State(ForcePipeline forces, boolean restart) {
+      for (int i = 0; i < ForcePipeline.AXES; i++) {
+        offset[i] = forces.getOffset(i);
+        sensitivity[i] = forces.getSensitivity(i);
+      }
+      high_score = forces.getHighScore();
+      zeroed = forces.isZeroed();
+      calibrated = forces.isCalibrated();
+      this.restart = restart;
+    }
+
+    /**
+     * Puts a pipeline in this state, restarting its pull detection if the
+     * recorded pipeline did, so pulls and high scores replay the same.
+     *
+     * @param forces the pipeline
+     */
+    public void apply(ForcePipeline forces) {
+      for (int i = 0; i < ForcePipeline.AXES; i++) {
+        forces.setOffset(i, offset[i]);
+        forces.setSensitivity(i, sensitivity[i]);
+      }
+      forces.setHighScore(high_score);
+      forces.setZeroed(zeroed);
+      forces.setCalibrated(calibrated);
+      if (restart) forces.restartPulls();
+    }
+
+    /**
+     * Returns the voltage offset of an axis.
+     *
+     * @param axis X, Y or Z
+     * @return the offset
+     */
+    public float getOffset(int axis) {
+      return offset[axis];
+    }
+
+    /**
+     * Returns the sensitivity of an axis.
+     *
+     * @param axis X, Y or Z
+     * @return the sensitivity in lb/V
+     */
+    public float getSensitivity(int axis) {
+      return sensitivity[axis];
+    }
+
+    /**
+     * Returns the high score.
+     *
+     * @return the high score in lbs
+     */
+    public float getHighScore() {
+      return high_score;
+    }
+
+    /**
+     * Returns whether the forces were zeroed.
+     *
+     * @return true if the offsets were set
+     */
+    public boolean isZeroed() {
+      return zeroed;
+    }
+
+    /**
+     * Returns whether the sensitivities were calibrated.
+     *
+     * @return true if the sensitivities were set
+     */
+    public boolean isCalibrated() {
+      return calibrated;
+    }
+
+    /**
+     * Returns whether the pull detection restarted with this state.
+     *
+     * @return true if a pull in progress was forgotten
+     */
+    public boolean isRestart() {
+      return restart;
+    }
+  }
+
+  private final List<File> segments; // segment files in order
+  private int segment = -1; // index of the open segment
+  private MappedByteBuffer buffer = null; // open segment
+  private final State state = new State(); // state from the latest AXIS and STATE records
+  private final float volts_per_count[] = new float[ForcePipeline.AXES]; // ADC scale of each axis
+  private final int raw[] = new int[ForcePipeline.AXES]; // counts of the current sample
+  private byte type = 0; // type of the current record
+  private int flags = 0; // flags of the current record
+  private long time = 0; // time of the current sample or SYNC in ns
+
+  /**
+   * Constructs a reader for a recorded session.
+   *
+   * @param path a segment file, which reads every segment of its session, or
+   *             a directory, which reads every segment in it
+   * @throws IOException if no segments are found
+   */
+  public SessionReader(File path) throws IOException {
+    segments = segmentsOf(path);
+    if (segments.isEmpty()) throw new FileNotFoundException("No recordings in " + path);
+  }
+
+  /**
+   * Returns the segment files of a recording in order.
+   *
+   * @param path a segment file or a directory
+   * @return the segment files
+   */
+  private static List<File> segmentsOf(File path) {
+    List<File> files = new ArrayList<>();
+    File dir = path.isDirectory() ? path : path.getAbsoluteFile().getParentFile();
+    String name = path.getName();
+    int end = name.lastIndexOf('-');
+    String prefix = path.isDirectory() || end < 0 ? "" : name.substring(0, end + 1);
+    File list[] = dir.listFiles();
+    if (list == null) return files;
+    for (File f : list) {
+      if (f.getName().startsWith(prefix) && f.getName().endsWith(SessionRecorder.EXTENSION)) files.add(f);
+    }
+    Collections.sort(files);
+    return files;
+  }
+
+  /**
+   * Moves to the next record, opening the next segment when one ends.
+   *
+   * @return false at the end of the recording
+   * @throws IOException if a segment can't be read or is not a recording
+   */
+  public boolean next() throws IOException {
+    while (true) {
+      if (buffer != null && buffer.remaining() >= SessionRecorder.RECORD_BYTES) {
+        int pos = buffer.position();
+        type = buffer.get(pos);
+        if (type != 0) {
+          read(pos);
+          buffer.position(pos + SessionRecorder.RECORD_BYTES);
+          return true;
+        }
+      }
+      if (segment + 1 >= segments.size()) return false;
+      open(segments.get(++segment));
+    }
+  }
+
+  /**
+   * Decodes the record at a position.
+   *
+   * @param pos position of the record
+   */
+  private void read(int pos) {
+    flags = buffer.get(pos + 1) & 0xFF;
+    switch (type) {
+      case SessionRecorder.SAMPLE:
+        time += buffer.getInt(pos + 2);
+        for (int i = 0; i < ForcePipeline.AXES; i++) raw[i] = getInt24(pos + 6 + 3 * i);
+        break;
+      case SessionRecorder.SYNC:
+        time = buffer.getLong(pos + 8);
+        break;
+      case SessionRecorder.AXIS:
+        int axis = flags;
+        if (axis < ForcePipeline.AXES) {
+          state.offset[axis] = buffer.getFloat(pos + 4);
+          state.sensitivity[axis] = buffer.getFloat(pos + 8);
+          volts_per_count[axis] = buffer.getFloat(pos + 12);
+        }
+        break;
+      case SessionRecorder.STATE:
+        state.zeroed = (flags & SessionRecorder.FLAG_ZEROED) != 0;
+        state.calibrated = (flags & SessionRecorder.FLAG_CALIBRATED) != 0;
+        state.restart = (flags & SessionRecorder.FLAG_RESTART) != 0;
+        state.high_score = buffer.getFloat(pos + 4);
+        break;
+      default:
+        break; // newer record type, skip it
+    }
+  }
+
+  /**
+   * Maps a segment and checks its header.
+   *
+   * @param file the segment file
+   * @throws IOException if the file can't be read or is not a recording
+   */
+  private void open(File file) throws IOException {
+    try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    if (
+      buffer.remaining() < SessionRecorder.HEADER_BYTES ||
+      buffer.getLong(0) != SessionRecorder.MAGIC ||
+      buffer.getInt(24) != SessionRecorder.RECORD_BYTES
+    ) throw new IOException(file + " is not a recording");
+    buffer.position(SessionRecorder.HEADER_BYTES);
+  }
+
+  /**
+   * Reads a signed 24 bit little-endian value.
+   *
+   * @param pos position of the value
+   * @return the sign extended value
+   */
+  private int getInt24(int pos) {
+    return (buffer.get(pos) & 0xFF) | ((buffer.get(pos + 1) & 0xFF) << 8) | (buffer.get(pos + 2) << 16);
+  }
+
+  /**
+   * Returns the type of the current record.
+   *
+   * @return SessionRecorder.SAMPLE, SYNC, AXIS or STATE
+   */
+  public byte getType() {
+    return type;
+  }
+
+  /**
+   * Returns the time of the current sample, or of the last sample or SYNC
+   * before the current record.
+   *
+   * @return the time in ns on the recording's clock
+   */
+  public long getTime() {
+    return time;
+  }
+
+  /**
+   * Returns the ADC counts of an axis of the current sample.
+   *
+   * @param axis X, Y or Z
+   * @return the raw conversion
+   */
+  public int getRaw(int axis) {
+    return raw[axis];
+  }
+
+  /**
+   * Returns the voltage of an axis of the current sample.
+   *
+   * @param axis X, Y or Z
+   * @return the voltage, NaN if the axis had no reading
+   */
+  public float getVoltage(int axis) {
+    if (raw[axis] == SampleRing.NO_RAW) return Float.NaN;
+    return raw[axis] * volts_per_count[axis];
+  }
+
+  /**
+   * Returns whether the current sample set a new high score when it was recorded.
+   *
+   * @return true if the sample was flagged
+   */
+  public boolean isHighScore() {
+    return type == SessionRecorder.SAMPLE && (flags & SessionRecorder.FLAG_HIGH_SCORE) != 0;
+  }
+
+  /**
+   * Puts a pipeline in the state of the latest AXIS and STATE records.
+   *
+   * @param forces the pipeline
+   */
+  public void applyState(ForcePipeline forces) {
+    state.apply(forces);
+  }
+
+  /**
+   * Returns a copy of the state of the latest AXIS and STATE records.
+   *
+   * @return the state
+   */
+  public State getState() {
+    State copy = new State();
+    System.arraycopy(state.offset, 0, copy.offset, 0, ForcePipeline.AXES);
+    System.arraycopy(state.sensitivity, 0, copy.sensitivity, 0, ForcePipeline.AXES);
+    copy.high_score = state.high_score;
+    copy.zeroed = state.zeroed;
+    copy.calibrated = state.calibrated;
+    copy.restart = state.restart;
+    return copy;
+  }
+
+  /**
+   * Releases the open segment. The mapping itself is freed by the garbage collector.
+   */
+  @Override
+  public void close() {
+    buffer = null;
+    segment = segments.size();
+  }
+}
@@ -0,0 +1,243 @@
+import java.io.*;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * This class records every raw sample of a session to memory-mapped segment
+ * files. Recording a sample only copies 16 bytes into the mapped buffer; the
+ * OS writes the pages back on its own, so there is no syscall per sample.
+ * A new segment is mapped when the current one is full.
+ *
+ * A segment starts with a 32 byte little-endian header:
+ *   long magic "ARMDEMO1", long wall clock ms, long nanoTime, int record size, int version
+ * followed by 16 byte records, the first byte being the record type:
+ *   SAMPLE  type, flags (FLAG_HIGH_SCORE), int ns since the previous SAMPLE or SYNC,
+ *           3 x int24 raw ADC counts (x, y, z), SampleRing.NO_RAW for a dead axis, 1 unused
+ *   SYNC    type, 7 unused, long nanoTime; times of the following samples count from it
+ *   AXIS    type, axis, 2 unused, float offset (V), float sensitivity (lb/V), float V per count
+ *   STATE   type, flags (FLAG_ZEROED, FLAG_CALIBRATED, FLAG_RESTART), 2 unused, float high score (lbs), 8 unused
+ * Every segment starts with a SYNC, three AXIS records and a STATE record so
+ * it can be read on its own. The rest of the file after the last record is zeros.
+ *
+ * Every method must be called from the same thread, which is a SampleStream's own.
+ */
+public class SessionRecorder {
+
+  public static final long MAGIC = 0x314F4D45444D5241L; // "ARMDEMO1" in little-endian
+  public static final int VERSION = 1; // record format version
+  public static final int HEADER_BYTES = 32; // segment header size
+  public static final int RECORD_BYTES = 16; // size of every record
+  public static final String EXTENSION = ".rec"; // segment file extension
+
+  public static final byte SAMPLE = 1; // raw sample record
+  public static final byte SYNC = 2; // absolute time record
+  public static final byte AXIS = 3; // offset and sensitivity of one axis
+  public static final byte STATE = 4; // high score and calibration state
+
+  public static final int FLAG_HIGH_SCORE = 0x01; // the sample set a new high score
+  public static final int FLAG_ZEROED = 0x01; // the forces were zeroed
+  public static final int FLAG_CALIBRATED = 0x02; // the sensitivities were calibrated
+  public static final int FLAG_RESTART = 0x04; // the pull detection restarted here
+
+  private static final int STATE_RECORDS = 2 + ForcePipeline.AXES; // SYNC, AXIS per axis and STATE
+
+  private final File dir; // directory of the segment files
+  private final String session; // file name prefix shared by the segments of this session
+  private final long segment_bytes; // size of each segment file
+  private SessionReader.State state = new SessionReader.State(); // offsets, sensitivities and high score to record, 0 until state()
+  private float high_score = 0; // high score to record, the state's or a newer one set by a sample
+  private final float volts_per_count[]; // ADC scale of each axis
+  private FileChannel channel = null; // open segment file
+  private MappedByteBuffer buffer = null; // mapped segment, null if recording stopped
+  private int segment = 0; // number of the open segment
+  private long last_time = 0; // time deltas are counted from here in ns
+
+  /**
+   * Constructs a recorder and maps its first segment. Record the state with
+   * state() before the first sample.
+   *
+   * @param dir directory for the segment files, created if missing
+   * @param segment_bytes size of each segment file
+   * @param volts_per_count volts per ADC count of each axis
+   * @throws IOException if the first segment can't be created
+   */
+  public SessionRecorder(File dir, long segment_bytes, float[] volts_per_count) throws IOException {
+    this.dir = dir;
+    this.segment_bytes = Math.max(segment_bytes, HEADER_BYTES + 2 * STATE_RECORDS * RECORD_BYTES);
+    this.volts_per_count = volts_per_count.clone();
+    session = "session-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+    if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Could not create " + dir);
+    open(System.nanoTime());
+  }
+
+  /**
+   * Records one sample.
+   *
+   * @param time timestamp of the sample in ns
+   * @param x raw ADC counts of the x axis
+   * @param y raw ADC counts of the y axis
+   * @param z raw ADC counts of the z axis
+   * @param new_high_score the high score the sample set in lbs, 0 if it set none
+   */
+  public void sample(long time, int x, int y, int z, float new_high_score) {
+    if (!reserve(2, time)) return;
+    long dt = time - last_time;
+    if (dt < 0 || dt > Integer.MAX_VALUE) {
+      sync(time);
+      dt = 0;
+    }
+    buffer.put(SAMPLE);
+    buffer.put((byte) (new_high_score > 0 ? FLAG_HIGH_SCORE : 0));
+    buffer.putInt((int) dt);
+    putInt24(x);
+    putInt24(y);
+    putInt24(z);
+    buffer.put((byte) 0);
+    last_time = time;
+    if (new_high_score > 0) high_score = new_high_score;
+  }
+
+  /**
+   * Records new offsets, sensitivities and high score. Call after any of them
+   * change other than by a sample, between the samples they came between.
+   *
+   * @param state the new state, kept for the start of the following segments
+   */
+  public void state(SessionReader.State state) {
+    this.state = state;
+    high_score = state.getHighScore();
+    long now = System.nanoTime();
+    if (reserve(STATE_RECORDS, now)) writeState(now, state.isRestart());
+  }
+
+  /**
+   * Writes the rest of the open segment to disk, trims it and stops recording.
+   */
+  public void close() {
+    try {
+      closeSegment();
+    } catch (IOException e) {
+      System.out.println("Could not close recording: " + e.getMessage());
+    }
+    buffer = null;
+  }
+
+  /**
+   * Makes room for records, rolling over to a new segment if needed.
+   *
+   * @param records number of records about to be written
+   * @param time current time in ns
+   * @return false if recording has stopped
+   */
+  private boolean reserve(int records, long time) {
+    if (buffer == null) return false;
+    if (buffer.remaining() >= records * RECORD_BYTES) return true;
+    try {
+      closeSegment();
+      segment++;
+      open(time);
+      return true;
+    } catch (IOException e) {
+      System.out.println("Recorder Not Responding: " + e.getMessage());
+      buffer = null;
+      return false;
+    }
+  }
+
+  /**
+   * Creates and maps a segment, then writes its header and state records.
+   *
+   * @param time current time in ns
+   * @throws IOException if the file can't be created or mapped
+   */
+  private void open(long time) throws IOException {
+    File file = new File(dir, String.format("%s-%03d%s", session, segment, EXTENSION));
+    FileChannel opened = new RandomAccessFile(file, "rw").getChannel();
+    try {
+      buffer = opened.map(FileChannel.MapMode.READ_WRITE, 0, segment_bytes);
+    } catch (IOException | RuntimeException e) {
+      //don't leave the file open, or behind without a header
+      opened.close();
+      file.delete();
+      throw e;
+    }
+    channel = opened;
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putLong(MAGIC);
+    buffer.putLong(System.currentTimeMillis());
+    buffer.putLong(time);
+    buffer.putInt(RECORD_BYTES);
+    buffer.putInt(VERSION);
+    writeState(time, false);
+  }
+
+  /**
+   * Flushes the open segment, cuts off the unused end and closes it.
+   *
+   * @throws IOException if the file can't be written
+   */
+  private void closeSegment() throws IOException {
+    if (channel == null) return;
+    buffer.force();
+    channel.truncate(buffer.position());
+    channel.close();
+    channel = null;
+  }
+
+  /**
+   * Writes a SYNC record followed by the AXIS and STATE records.
+   *
+   * @param time current time in ns
+   * @param restart did the pull detection restart with the state
+   */
+  private void writeState(long time, boolean restart) {
+    sync(time);
+    for (int i = 0; i < ForcePipeline.AXES; i++) {
+      buffer.put(AXIS);
+      buffer.put((byte) i);
+      buffer.putShort((short) 0);
+      buffer.putFloat(state.getOffset(i));
+      buffer.putFloat(state.getSensitivity(i));
+      buffer.putFloat(volts_per_count[i]);
+    }
+    buffer.put(STATE);
+    buffer.put(
+      (byte) (
+        (state.isZeroed() ? FLAG_ZEROED : 0) |
+        (state.isCalibrated() ? FLAG_CALIBRATED : 0) |
+        (restart ? FLAG_RESTART : 0)
+      )
+    );
+    buffer.putShort((short) 0);
+    buffer.putFloat(high_score);
+    buffer.putLong(0);
+  }
+
+  /**
+   * Writes a SYNC record, restarting the time deltas.
+   *
+   * @param time current time in ns
+   */
+  private void sync(long time) {
+    buffer.put(SYNC);
+    buffer.put((byte) 0);
+    buffer.putShort((short) 0);
+    buffer.putInt(0);
+    buffer.putLong(time);
+    last_time = time;
+  }
+
+  /**
+   * Writes the low 24 bits of a value, least significant byte first.
+   *
+   * @param value a value between -2^23 and 2^23 - 1
+   */
+  private void putInt24(int value) {
+    buffer.put((byte) value);
+    buffer.put((byte) (value >> 8));
+    buffer.put((byte) (value >> 16));
+  }
+}
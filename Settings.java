@@ -0,0 +1,115 @@
+import java.io.*;
+import java.util.Properties;
+
+/**
+ * This class holds the per-deployment settings of the arm demo.
+ * Values are read from armdemo.properties in the working directory and can be
+ * overridden with -Darmdemo.&lt;key&gt;=value on the command line.
+ */
+public class Settings {
+
+  private static final String FILE_NAME = "armdemo.properties"; // settings file
+  private static final String PREFIX = "armdemo."; // system property prefix
+  private static final Properties file = load(); // values from the settings file
+
+  private Settings() {}
+
+  /**
+   * Loads the settings file if there is one.
+   *
+   * @return the properties in the settings file, empty if it doesn't exist
+   */
+  private static Properties load() {
+    Properties props = new Properties();
+    File f = new File(FILE_NAME);
+    if (f.isFile()) {
+      try (InputStream in = new FileInputStream(f)) {
+        props.load(in);
+      } catch (IOException e) {
+        System.out.println("Could not read " + FILE_NAME + ": " + e.getMessage());
+      }
+    }
+    return props;
+  }
+
+  /**
+   * Returns the setting for a key as a string.
+   *
+   * @param key name of the setting without the armdemo. prefix
+   * @param def value returned if the setting is missing
+   * @return the setting or def
+   */
+  public static String getString(String key, String def) {
+    String value = System.getProperty(PREFIX + key);
+    if (value == null) value = file.getProperty(key);
+    return value != null ? value.trim() : def;
+  }
+
+  /**
+   * Returns the setting for a key as an int.
+   *
+   * @param key name of the setting without the armdemo. prefix
+   * @param def value returned if the setting is missing or not a number
+   * @return the setting or def
+   */
+  public static int getInt(String key, int def) {
+    String value = getString(key, null);
+    if (value == null) return def;
+    try {
+      return Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      System.out.println("Bad value for " + key + ": " + value);
+      return def;
+    }
+  }
+
+  /**
+   * Returns the setting for a key as a float.
+   *
+   * @param key name of the setting without the armdemo. prefix
+   * @param def value returned if the setting is missing or not a number
+   * @return the setting or def
+   */
+  public static float getFloat(String key, float def) {
+    String value = getString(key, null);
+    if (value == null) return def;
+    try {
+      return Float.parseFloat(value);
+    } catch (NumberFormatException e) {
+      System.out.println("Bad value for " + key + ": " + value);
+      return def;
+    }
+  }
+
+  /**
+   * Returns the setting for a key as an enum constant, ignoring case.
+   *
+   * @param <E> type of the enum
+   * @param key name of the setting without the armdemo. prefix
+   * @param type class of the enum
+   * @param def value returned if the setting is missing or not a constant of the enum
+   * @return the setting or def
+   */
+  public static <E extends Enum<E>> E getEnum(String key, Class<E> type, E def) {
+    String value = getString(key, null);
+    if (value == null) return def;
+    try {
+      return Enum.valueOf(type, value.toUpperCase());
+    } catch (IllegalArgumentException e) {
+      System.out.println("Bad value for " + key + ": " + value);
+      return def;
+    }
+  }
+
+  /**
+   * Returns the setting for a key as a boolean.
+   *
+   * @param key name of the setting without the armdemo. prefix
+   * @param def value returned if the setting is missing
+   * @return the setting or def
+   */
+  public static boolean getBoolean(String key, boolean def) {
+    String value = getString(key, null);
+    return value != null ? Boolean.parseBoolean(value) : def;
+  }
+}
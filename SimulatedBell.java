@@ -0,0 +1,84 @@
+/**
+ * This class is a simulated bell output. It records every edge with its
+ * timestamp so the bell timing can be checked without a Raspberry Pi.
+ */
+public class SimulatedBell implements BellOutput {
+
+  private final long times[]; // time of each recent edge in ns
+  private final boolean states[]; // level after each recent edge
+  private long edges = 0; // edges recorded
+  private boolean state = false; // current level
+
+  /**
+   * Constructs a simulated bell.
+   *
+   * @param history number of recent edges to keep
+   */
+  public SimulatedBell(int history) {
+    times = new long[history];
+    states = new boolean[history];
+  }
+
+  @Override
+  public void high() {
+    set(true);
+  }
+
+  @Override
+  public void low() {
+    set(false);
+  }
+
+  /**
+   * Records an edge if the level changes.
+   *
+   * @param level new level
+   */
+  private synchronized void set(boolean level) {
+    if (level == state) return;
+    int slot = (int) (edges % times.length);
+    times[slot] = System.nanoTime();
+    states[slot] = level;
+    state = level;
+    edges++;
+  }
+
+  /**
+   * Returns the number of edges recorded.
+   *
+   * @return the number of edges
+   */
+  public synchronized long getEdgeCount() {
+    return edges;
+  }
+
+  /**
+   * Returns the time of a recent edge.
+   *
+   * @param age 0 for the last edge, 1 for the one before, ...
+   * @return the time in ns, or -1 if it is no longer kept
+   */
+  public synchronized long getEdgeTime(int age) {
+    if (age >= times.length || age >= edges) return -1;
+    return times[(int) ((edges - 1 - age) % times.length)];
+  }
+
+  /**
+   * Returns the level after a recent edge.
+   *
+   * @param age 0 for the last edge, 1 for the one before, ...
+   * @return true if the bell was turned on
+   */
+  public synchronized boolean getEdgeState(int age) {
+    return states[(int) ((edges - 1 - age) % times.length)];
+  }
+
+  /**
+   * Returns whether the bell is on.
+   *
+   * @return the current level
+   */
+  public synchronized boolean isHigh() {
+    return state;
+  }
+}
@@ -0,0 +1,138 @@
+import java.io.*;
+import java.util.Random;
+
+/**
+ * This class is a simulated force sensor ADC. It produces a configurable pull
+ * waveform with noise at the conversion rate and resolution of the MCP342x
+ * configuration it is given, and conversions take as long as on the real device.
+ *
+ * Every period the simulated contestant pulls for a while with a raised
+ * cosine force curve. The peak varies from pull to pull but is the same on
+ * every run, so simulated sessions are repeatable.
+ */
+public class SimulatedForceSensor implements ForceSensor {
+
+  private final byte config; // ADC configuration command
+  private final int bits; // resolution of a conversion
+  private final int gain; // PGA gain
+  private final long conversion_ns; // time for one conversion
+  private final float weight; // share of the pull seen by this axis
+  private final float peak; // largest pull in volts
+  private final float offset; // voltage with no force
+  private final float noise; // standard deviation of the noise in volts
+  private final float period; // seconds from one pull to the next
+  private final float length; // seconds a pull lasts
+  private final Random random = new Random(1); // noise source
+
+  private long start = 0; // time of configure() in ns
+  private long lastConversion = -1; // index of the last conversion read
+  private long oneShotReady = -1; // time the pending one-shot conversion finishes
+  private int raw = 0; // last conversion in ADC counts
+
+  /**
+   * Constructs a simulated sensor.
+   *
+   * @param config ADC configuration command
+   * @param weight share of the pull seen by this axis, 0 to 1
+   */
+  public SimulatedForceSensor(byte config, float weight) {
+    this.config = config;
+    this.weight = weight;
+    bits = Mcp342x.bitsOf(config);
+    gain = Mcp342x.gainOf(config);
+    conversion_ns = Mcp342x.conversionTimeOf(config);
+    peak = Settings.getFloat("sim.peak.v", 0.1f);
+    offset = Settings.getFloat("sim.offset.v", 0.01f);
+    noise = Settings.getFloat("sim.noise.v", 0.0005f);
+    period = Settings.getFloat("sim.pull.period.s", 8);
+    length = Settings.getFloat("sim.pull.length.s", 2);
+  }
+
+  @Override
+  public void configure() {
+    start = System.nanoTime();
+    lastConversion = -1;
+  }
+
+  @Override
+  public void reopen() {
+    configure();
+  }
+
+  @Override
+  public void startConversion() {
+    oneShotReady = System.nanoTime() + conversion_ns;
+  }
+
+  @Override
+  public boolean isOneShot() {
+    return (config & Mcp342x.CMD_MODE_CONT) == 0;
+  }
+
+  @Override
+  public boolean poll() {
+    long now = System.nanoTime();
+    long done;
+    if (isOneShot()) {
+      if (oneShotReady < 0 || oneShotReady - now > 0) return false;
+      done = oneShotReady;
+      oneShotReady = -1;
+    } else {
+      long index = (now - start) / conversion_ns;
+      if (index <= lastConversion) return false;
+      lastConversion = index;
+      done = start + index * conversion_ns;
+    }
+    raw = quantize(waveform((done - start) / 1e9f));
+    return true;
+  }
+
+  /**
+   * Returns the simulated input voltage at a time.
+   *
+   * @param t seconds since configure()
+   * @return the voltage
+   */
+  public float waveform(float t) {
+    long pull = (long) (t / period);
+    float x = t - pull * period;
+    float force = 0;
+    if (x < length) {
+      float size = 0.6f + 0.4f * ((pull * 0x9E3779B97F4A7C15L) >>> 40) / (1 << 24); // same sizes every run
+      force = size * 0.5f * (1 - (float) Math.cos(2 * Math.PI * x / length));
+    }
+    return offset + weight * peak * force + noise * (float) random.nextGaussian();
+  }
+
+  /**
+   * Converts a voltage to ADC counts like the real converter.
+   *
+   * @param volts input voltage
+   * @return the clipped conversion in ADC counts
+   */
+  private int quantize(float volts) {
+    int full = 1 << (bits - 1);
+    int counts = Math.round(volts * gain / 2.048f * full);
+    return Math.max(-full, Math.min(full - 1, counts));
+  }
+
+  @Override
+  public int getRaw() {
+    return raw;
+  }
+
+  @Override
+  public float getVoltage() {
+    return toVoltage(raw);
+  }
+
+  @Override
+  public float toVoltage(int counts) {
+    return counts * 2.048f / (1 << (bits - 1)) / gain;
+  }
+
+  @Override
+  public long getConversionTime() {
+    return conversion_ns;
+  }
+}
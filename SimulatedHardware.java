@@ -0,0 +1,47 @@
+import java.util.*;
+
+/**
+ * This class is simulated hardware for running the demo without a Raspberry
+ * Pi. The sensors generate pull waveforms and the strips and bells record
+ * what they are sent.
+ */
+public class SimulatedHardware implements Hardware {
+
+  private final String weights[] = Settings.getString("sim.weights", "0.8,0.6,0.2").split(","); // share of the pull per axis, repeated for each station
+  private int sensors = 0; // sensors handed out so far
+  private final Map<Integer, SimulatedLedStrip> strips = new HashMap<>(); // strip of each chip select
+  private final Map<Integer, SimulatedBell> bells = new HashMap<>(); // bell of each pin
+
+  @Override
+  public synchronized ForceSensor getSensor(int bus, int address, byte config) {
+    float weight = Float.parseFloat(weights[sensors % weights.length].trim());
+    sensors++;
+    return new SimulatedForceSensor(config, weight);
+  }
+
+  @Override
+  public I2cBusExecutor getBusExecutor(int bus) {
+    return null; // simulated sensors share no bus
+  }
+
+  @Override
+  public ForceSensor.Latch getLatch(int bus) {
+    return null; // each simulated sensor is started on its own
+  }
+
+  @Override
+  public synchronized LedStrip getLedStrip(int chip_select, int num_leds) {
+    return strips.computeIfAbsent(
+      chip_select,
+      cs -> new SimulatedLedStrip(num_leds, Settings.getInt("sim.led.history", 64))
+    );
+  }
+
+  @Override
+  public synchronized BellOutput getBell(int pin) {
+    return bells.computeIfAbsent(pin, p -> new SimulatedBell(Settings.getInt("sim.bell.history", 64)));
+  }
+
+  @Override
+  public void close() {}
+}
@@ -0,0 +1,76 @@
+import java.util.Arrays;
+
+/**
+ * This class is a simulated LED strip. It keeps the most recent frames it is
+ * shown, with their timestamps, so tests and profiling runs can check them.
+ */
+public class SimulatedLedStrip implements LedStrip {
+
+  private final int numLEDs; // number of pixels
+  private final int pixels[]; // packed colors of the next frame
+  private final int frames[][]; // recent frames, oldest overwritten first
+  private final long times[]; // time each recent frame was shown in ns
+  private long framesSent = 0; // frames shown
+
+  /**
+   * Constructs a simulated strip.
+   *
+   * @param num_leds number of pixels
+   * @param history number of recent frames to keep
+   */
+  public SimulatedLedStrip(int num_leds, int history) {
+    numLEDs = num_leds;
+    pixels = new int[num_leds];
+    frames = new int[history][num_leds];
+    times = new long[history];
+  }
+
+  @Override
+  public void clear() {
+    Arrays.fill(pixels, 0);
+  }
+
+  @Override
+  public void setPixelColor(int index, int r, int g, int b) {
+    if (index < numLEDs) pixels[index] = DotStar.color(r, g, b);
+  }
+
+  @Override
+  public void setPixels(int[] colors, int count) {
+    count = Math.max(0, Math.min(count, Math.min(numLEDs, colors.length)));
+    System.arraycopy(colors, 0, pixels, 0, count);
+    Arrays.fill(pixels, count, numLEDs, 0);
+  }
+
+  @Override
+  public synchronized void show() {
+    int slot = (int) (framesSent % frames.length);
+    System.arraycopy(pixels, 0, frames[slot], 0, numLEDs);
+    times[slot] = System.nanoTime();
+    framesSent++;
+  }
+
+  @Override
+  public synchronized long getFramesSent() {
+    return framesSent;
+  }
+
+  @Override
+  public long getFramesSkipped() {
+    return 0;
+  }
+
+  /**
+   * Copies a recent frame.
+   *
+   * @param age 0 for the last frame shown, 1 for the one before, ...
+   * @param out receives the packed color of each pixel
+   * @return the time the frame was shown in ns, or -1 if it is no longer kept
+   */
+  public synchronized long getFrame(int age, int[] out) {
+    if (age >= frames.length || age >= framesSent) return -1;
+    int slot = (int) ((framesSent - 1 - age) % frames.length);
+    System.arraycopy(frames[slot], 0, out, 0, numLEDs);
+    return times[slot];
+  }
+}
@@ -0,0 +1,132 @@
+/**
+ * This class holds the samples of the last few seconds in a primitive ring
+ * buffer and tracks their maximum and minimum with monotonic deques, so adding
+ * a sample and reading the extremes are O(1) amortized and allocation free.
+ */
+public class SlidingWindow {
+
+  private final float duration; // length of the window in seconds
+  private final int mask; // index mask, capacity is a power of two
+  private final double times[]; // sample times in seconds, double so they stay distinct over a long day
+  private final float values[]; // sample values
+  private long head = 0; // sequence number of the oldest sample
+  private long tail = 0; // sequence number of the next sample
+  private final long maxDeque[]; // sequence numbers of decreasing values
+  private long maxHead = 0; // front of the max deque
+  private long maxTail = 0; // back of the max deque
+  private final long minDeque[]; // sequence numbers of increasing values
+  private long minHead = 0; // front of the min deque
+  private long minTail = 0; // back of the min deque
+
+  /**
+   * Constructs a window.
+   *
+   * @param capacity most samples the window can hold, rounded up to a power of two
+   * @param duration length of the window in seconds
+   */
+  public SlidingWindow(int capacity, float duration) {
+    int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+    this.duration = duration;
+    mask = size - 1;
+    times = new double[size];
+    values = new float[size];
+    maxDeque = new long[size];
+    minDeque = new long[size];
+  }
+
+  /**
+   * Adds a sample and drops the samples that fell out of the window. If the
+   * window is full the oldest sample is dropped early.
+   *
+   * @param time time of the sample in seconds, must not decrease
+   * @param value the sample
+   */
+  public void add(double time, float value) {
+    double cutoff = time - duration;
+    while (head < tail && times[(int) head & mask] < cutoff) removeOldest();
+    if (tail - head > mask) removeOldest();
+
+    int slot = (int) tail & mask;
+    times[slot] = time;
+    values[slot] = value;
+    while (maxTail > maxHead && values[(int) maxDeque[(int) (maxTail - 1) & mask] & mask] <= value) maxTail--;
+    maxDeque[(int) maxTail++ & mask] = tail;
+    while (minTail > minHead && values[(int) minDeque[(int) (minTail - 1) & mask] & mask] >= value) minTail--;
+    minDeque[(int) minTail++ & mask] = tail;
+    tail++;
+  }
+
+  /**
+   * Drops the oldest sample.
+   */
+  private void removeOldest() {
+    if (maxHead < maxTail && maxDeque[(int) maxHead & mask] == head) maxHead++;
+    if (minHead < minTail && minDeque[(int) minHead & mask] == head) minHead++;
+    head++;
+  }
+
+  /**
+   * Removes every sample.
+   */
+  public void clear() {
+    head = tail;
+    maxHead = maxTail;
+    minHead = minTail;
+  }
+
+  /**
+   * Returns the largest sample in the window.
+   *
+   * @return the maximum, 0 if the window is empty
+   */
+  public float getMax() {
+    return maxHead < maxTail ? values[(int) maxDeque[(int) maxHead & mask] & mask] : 0;
+  }
+
+  /**
+   * Returns the smallest sample in the window.
+   *
+   * @return the minimum, 0 if the window is empty
+   */
+  public float getMin() {
+    return minHead < minTail ? values[(int) minDeque[(int) minHead & mask] & mask] : 0;
+  }
+
+  /**
+   * Returns the number of samples in the window.
+   *
+   * @return the number of samples
+   */
+  public int size() {
+    return (int) (tail - head);
+  }
+
+  /**
+   * Returns the time of a sample.
+   *
+   * @param i index of the sample, 0 is the oldest
+   * @return the time in seconds
+   */
+  public double getTime(int i) {
+    return times[(int) (head + i) & mask];
+  }
+
+  /**
+   * Returns the value of a sample.
+   *
+   * @param i index of the sample, 0 is the oldest
+   * @return the sample
+   */
+  public float getValue(int i) {
+    return values[(int) (head + i) & mask];
+  }
+
+  /**
+   * Returns the length of the window.
+   *
+   * @return the window length in seconds
+   */
+  public float getDuration() {
+    return duration;
+  }
+}
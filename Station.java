@@ -0,0 +1,307 @@
+import java.io.*;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * This class is one arm wrestling rig: its three force sensor ADCs, LED strip
+ * and bell, and the forces, offsets, sensitivities and high score computed
+ * from its samples. Several stations can run side by side on one Pi; each
+ * one's wiring comes from the station.N settings (N counting from 1):
+ *   station.N.name       name shown on the screen, "Station N" by default
+ *   station.N.i2c.bus    I2C bus of the ADCs, 1 by default
+ *   station.N.adc.x/y/z  I2C addresses of the ADCs, 0x6C, 0x68 and 0x6A by default for station 1
+ *   station.N.led.cs     SPI chip select of the LED strip, 0 by default for station 1
+ *   station.N.bell.pin   GPIO pin of the bell (wiringPi numbering), 6 by default for station 1
+ * The other stations must set their adc, led.cs and bell.pin settings, so
+ * two stations never drive the same devices by default.
+ */
+public class Station {
+
+  private final String name; // name shown on the screen
+  private final int bus; // i2c bus of the ADCs
+  private final int addresses[]; // i2c address of the x, y and z ADCs
+  private final int chip_select; // SPI chip select of the LED strip
+  private final int bell_pin; // GPIO pin of the bell
+  private final String missing; // wiring settings the station lacks, empty if none
+  private final ForcePipeline forces; // forces, offsets, sensitivities and high score
+  private final SampleRing ring = new SampleRing(1024); // samples from the sampling thread
+  private final PipelineMetrics metrics; // latency of each stage from sample to screen
+  private final int num_leds; // number of LEDs on the strip
+  private final int scale_palette[]; // color of each LED in the scale
+  private final ForceSensor adcs[] = new ForceSensor[ForcePipeline.AXES]; // x, y and z ADCs
+  private LedStrip led_strip; // LED strip
+  private LedAnimator led_animator; // renders the LED strip on the render thread
+  private BellScheduler bell; // times the bell pulses
+  private SampleStream stream; // raw sample recording and live telemetry, null when neither is on
+  private volatile float led_level = 0; // fraction of the bar that is lit
+  private volatile long led_sample_time = 0; // timestamp of the sample led_level came from
+  private long drawn_sample_time = 0; // sample drawn by the render thread's current frame
+  private long shown_sample_time = 0; // sample of the last frame timed by the render thread
+
+  /**
+   * Constructs a station from its settings. Call open() to start its hardware.
+   *
+   * @param number number of the station, counting from 1
+   * @param forces pipeline the station's samples go through
+   * @param metrics metrics the LED latency is recorded in
+   * @param num_leds number of LEDs on the strip
+   */
+  public Station(int number, ForcePipeline forces, PipelineMetrics metrics, int num_leds) {
+    String prefix = "station." + number + ".";
+    name = Settings.getString(prefix + "name", "Station " + number);
+    bus = Settings.getInt(prefix + "i2c.bus", 1);
+    boolean first = number == 1; // only the first station has default wiring, -1 is missing
+    addresses = new int[] {
+      getAddress(prefix + "adc.x", first ? 0x6C : -1),
+      getAddress(prefix + "adc.y", first ? 0x68 : -1),
+      getAddress(prefix + "adc.z", first ? 0x6A : -1),
+    };
+    chip_select = Settings.getInt(prefix + "led.cs", first ? 0 : -1);
+    bell_pin = Settings.getInt(prefix + "bell.pin", first ? 6 : -1);
+    String missing = "";
+    if (addresses[0] < 0) missing += " " + prefix + "adc.x";
+    if (addresses[1] < 0) missing += " " + prefix + "adc.y";
+    if (addresses[2] < 0) missing += " " + prefix + "adc.z";
+    if (chip_select < 0) missing += " " + prefix + "led.cs";
+    if (bell_pin < 0) missing += " " + prefix + "bell.pin";
+    this.missing = missing;
+    this.forces = forces;
+    this.metrics = metrics;
+    this.num_leds = num_leds;
+    scale_palette = getScalePalette(num_leds);
+  }
+
+  /**
+   * Returns an I2C address setting, which may be written in hex (e.g. 0x6C).
+   *
+   * @param key name of the setting
+   * @param def value returned if the setting is missing or not a number
+   * @return the address
+   */
+  private static int getAddress(String key, int def) {
+    String value = Settings.getString(key, null);
+    if (value == null) return def;
+    try {
+      return Integer.decode(value);
+    } catch (NumberFormatException e) {
+      System.out.println("Bad value for " + key + ": " + value);
+      return def;
+    }
+  }
+
+  /**
+   * Opens the station's ADCs, LED strip and bell and starts drawing the force
+   * bar on the strip.
+   *
+   * @param hardware the hardware the station is wired to
+   * @param config ADC configuration command
+   * @param led_fps most LED frames per second
+   * @param render_thread render thread shared by every station's strip
+   * @throws IOException if a wiring setting is missing or the ADCs or the strip can't be opened
+   */
+  public void open(Hardware hardware, byte config, float led_fps, ScheduledExecutorService render_thread)
+    throws IOException {
+    if (!missing.isEmpty()) throw new IOException(name + " needs the settings" + missing);
+    for (int i = 0; i < ForcePipeline.AXES; i++) adcs[i] = hardware.getSensor(bus, addresses[i], config);
+    led_strip = hardware.getLedStrip(chip_select, num_leds);
+    if (led_strip instanceof DotStar) {
+      DotStar dotstar = (DotStar) led_strip;
+      dotstar.setBrightnessMode(
+        Settings.getEnum("led.brightness.mode", DotStar.BrightnessMode.class, DotStar.BrightnessMode.HYBRID)
+      );
+      dotstar.setBrightness(Settings.getInt("led.brightness", 255));
+      dotstar.setGamma(Settings.getFloat("led.gamma", 1));
+    }
+    led_animator = new LedAnimator(led_strip, led_fps, render_thread);
+    led_animator.setBackground(this::drawScale);
+    led_animator.setFrameListener(this::ledFrameSent);
+    led_animator.start();
+    bell = new BellScheduler(hardware.getBell(bell_pin));
+  }
+
+  /**
+   * Creates the sampler that reads the station's ADCs into its ring, and its
+   * stream's ring if it has one. Set the stream first.
+   *
+   * @param hardware the hardware the station is wired to
+   * @param use_z read the z ADC
+   * @param general_call start the one-shot conversions with an I2C general call
+   * @param rate_hz samples per second
+   * @return the sampler, to be run by a SamplingScheduler
+   * @throws IOException if the bus or the general call can't be opened
+   */
+  public AdcSampler newSampler(Hardware hardware, boolean use_z, boolean general_call, float rate_hz)
+    throws IOException {
+    return new AdcSampler(
+      name,
+      new ForceSensor[] { adcs[0], adcs[1], use_z ? adcs[2] : null },
+      general_call ? hardware.getLatch(bus) : null,
+      hardware.getBusExecutor(bus),
+      ring,
+      stream != null ? stream.getRing() : null,
+      metrics,
+      rate_hz
+    );
+  }
+
+  /**
+   * Stops the station's LED strip, bell, recording and telemetry and prints
+   * how many LED frames were sent.
+   *
+   * @throws InterruptedException if the current thread is interrupted
+   */
+  public void stop() throws InterruptedException {
+    if (stream != null) {
+      stream.stop();
+      System.out.println(name + " stream samples dropped: " + stream.getDropped());
+      if (stream.getTelemetry() != null) {
+        System.out.println(name + " telemetry samples dropped: " + stream.getTelemetry().getDropped());
+      }
+    }
+    if (led_animator != null) led_animator.stop();
+    if (bell != null) bell.shutdown();
+    if (led_strip != null) System.out.println(
+      name + " LED frames sent: " + led_strip.getFramesSent() +
+      ", skipped: " + led_strip.getFramesSkipped()
+    );
+  }
+
+  /**
+   * Returns the name shown on the screen.
+   *
+   * @return the name
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Returns the I2C bus of the station's ADCs.
+   *
+   * @return the bus number
+   */
+  public int getBus() {
+    return bus;
+  }
+
+  /**
+   * Returns the pipeline the station's samples go through.
+   *
+   * @return the forces, offsets, sensitivities and high score
+   */
+  public ForcePipeline getForces() {
+    return forces;
+  }
+
+  /**
+   * Returns the ring the station's samples are published to.
+   *
+   * @return the ring
+   */
+  public SampleRing getRing() {
+    return ring;
+  }
+
+  /**
+   * Returns one of the station's ADCs.
+   *
+   * @param axis ForcePipeline.X, Y or Z
+   * @return the ADC, null before open()
+   */
+  public ForceSensor getSensor(int axis) {
+    return adcs[axis];
+  }
+
+  /**
+   * Returns the stream recording the station's samples and sending its forces.
+   *
+   * @return the stream, null when neither recording nor streaming
+   */
+  public SampleStream getStream() {
+    return stream;
+  }
+
+  /**
+   * Sets the stream recording the station's samples and sending its forces.
+   * The station stops it when stopped.
+   *
+   * @param stream the stream, null for none
+   */
+  public void setStream(SampleStream stream) {
+    this.stream = stream;
+  }
+
+  /**
+   * Sets how much of the scale is shown on the LED strip. The LED render
+   * thread draws it on its next frame.
+   *
+   * @param scalar number between 0 and 1 that represents the percentage of LEDs enabled
+   * @param sample_time timestamp of the sample the level comes from, 0 if no new sample
+   */
+  public void ledScale(float scalar, long sample_time) {
+    led_level = scalar;
+    if (sample_time != 0) led_sample_time = sample_time;
+  }
+
+  /**
+   * Flashes the LED strip and rings the bell for as long as the flash.
+   *
+   * @param frames length of the flash in frames
+   * @param led_fps LED frames per second
+   */
+  public void celebrate(int frames, float led_fps) {
+    if (bell != null) bell.ring((long) (frames * 1000 / led_fps));
+    if (led_animator != null) led_animator.play(LedAnimator.rainbow(num_leds, frames));
+  }
+
+  /**
+   * Stops the bell now.
+   */
+  public void bellOff() {
+    if (bell != null) bell.off();
+  }
+
+  /**
+   * Draws the scale on the LED strip with a green to red gradient by copying
+   * the start of the precomputed palette. Runs on the LED render thread.
+   *
+   * @param strip the strip to draw on
+   * @param frame unused, the scale is not animated
+   * @return true, the scale never finishes
+   */
+  private boolean drawScale(LedStrip strip, long frame) {
+    drawn_sample_time = led_sample_time;
+    strip.setPixels(scale_palette, Math.round(num_leds * led_level));
+    return true;
+  }
+
+  /**
+   * Times the first frame that shows a new bar level. Runs on the LED render
+   * thread after each frame is sent.
+   */
+  private void ledFrameSent() {
+    long t = drawn_sample_time;
+    if (t != 0 && t != shown_sample_time) {
+      metrics.record(PipelineMetrics.Stage.LED, t, System.nanoTime());
+      shown_sample_time = t;
+    }
+  }
+
+  /**
+   * Computes the green to red gradient of the scale once for every LED.
+   *
+   * @param num_leds number of LEDs in the scale
+   * @return the packed color of each LED
+   */
+  static int[] getScalePalette(int num_leds) {
+    int palette[] = new int[num_leds];
+    int green = 120; //255 was too green so I went with 120
+    int red = 0;
+    for (int i = 0; i < num_leds; i++) {
+      float perc = (float) i / num_leds;
+      if (perc <= 0.5) red = (int) Math.round(2 * perc * 255); else green =
+        (int) Math.round((1 - (2 * (perc - 0.5))) * 120);
+      palette[i] = DotStar.color(red, green, 0);
+    }
+    return palette;
+  }
+}
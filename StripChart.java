@@ -0,0 +1,233 @@
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.chart.NumberAxis;
+import javafx.scene.layout.Pane;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
+
+/**
+ * This class is a lightweight strip chart drawn on a Canvas. It is a drop-in
+ * alternative to the LineChart that does not create a node per point.
+ *
+ * The plot is drawn on two canvas tiles laid end to end like a tape. New
+ * samples are only drawn onto the tiles as line segments and the tape is
+ * scrolled by moving the tiles, so a steady stream only costs the newly
+ * scrolled region. The whole plot is redrawn when the y axis or the size changes.
+ * The y axis snaps to 1, 2 or 5 times a power of ten. It grows as soon as a
+ * sample needs it, but it only shrinks after the maximum has stayed well below
+ * it for a while, so noise at rest doesn't rescale the chart every tick.
+ */
+public class StripChart extends Region {
+
+  private static final Color LINE_COLOR = Color.web("#00AACC"); // same as .default-color0 in armdemo.css
+  private static final double LINE_WIDTH = 4; // same as .chart-series-line in armdemo.css
+  private static final double NICE_STEPS[] = { 1, 2, 5, 10 }; // y bounds within each power of ten
+  private static final double SHRINK_BELOW = 0.5; // share of the y bound the max must fall under to shrink it
+  private static final double SHRINK_AFTER = 1; // seconds the max must stay under it before the y axis shrinks
+
+  private final NumberAxis xAxis; // time axis
+  private final NumberAxis yAxis; // force axis
+  private final Pane plot = new Pane(); // clipped area holding the tiles
+  private final Rectangle clip = new Rectangle(); // clip of the plot area
+  private final Canvas tiles[] = { new Canvas(), new Canvas() }; // tape tiles
+  private final long tileIndex[] = { -1, -1 }; // tape position of each tile
+
+  private final float duration; // seconds shown across the plot
+  private double width = 0; // plot width in px
+  private double height = 0; // plot height in px
+  private double yMax = 0; // y axis upper bound the tiles were drawn with
+  private double shrinkSince = Double.NaN; // time the max fell well below yMax, NaN while it hasn't
+  private double origin = 0; // time at tape position 0
+  private double lastTime = Double.NEGATIVE_INFINITY; // time of the last drawn sample
+  private float lastValue = 0; // value of the last drawn sample
+  private boolean redraw = true; // does the whole plot need drawing
+
+  /**
+   * Constructs a strip chart.
+   *
+   * @param duration seconds shown across the chart
+   */
+  public StripChart(float duration) {
+    this.duration = duration;
+    xAxis = new NumberAxis(0, duration, duration / 4);
+    xAxis.setLabel("Time (s)");
+    xAxis.setAnimated(false);
+    yAxis = new NumberAxis(0, 2, 2000);
+    yAxis.setLabel("Force (lbf)");
+    yAxis.setAnimated(false);
+    for (Canvas tile : tiles) tile.setMouseTransparent(true);
+    plot.getChildren().addAll(tiles);
+    plot.setClip(clip);
+    getChildren().addAll(xAxis, yAxis, plot);
+    getStyleClass().add("chart");
+  }
+
+  /**
+   * Draws the samples of a window that have not been drawn yet and scrolls
+   * the chart so the newest sample is at the right edge.
+   *
+   * @param window samples to show
+   */
+  public void update(SlidingWindow window) {
+    int n = window.size();
+    if (n == 0 || width <= 0 || height <= 0) return;
+    double now = window.getTime(n - 1);
+    double max = yBound(window.getMax() + 1, now);
+
+    // same x axis as the line chart
+    xAxis.setUpperBound(Math.max(now, duration));
+    xAxis.setLowerBound(Math.max(now - duration, 0));
+
+    if (redraw || max != yMax) {
+      // start a new tape with the window's first sample at the left edge
+      yMax = max;
+      yAxis.setUpperBound(max);
+      origin = Math.max(now - duration, 0);
+      tileIndex[0] = -1;
+      tileIndex[1] = -1;
+      lastTime = Double.NEGATIVE_INFINITY;
+      redraw = false;
+    }
+
+    // draw the new segments
+    int first = 0;
+    while (first < n && window.getTime(first) <= lastTime) first++;
+    for (int i = first; i < n; i++) {
+      double t = window.getTime(i);
+      float v = window.getValue(i);
+      if (lastTime != Double.NEGATIVE_INFINITY) segment(lastTime, lastValue, t, v);
+      lastTime = t;
+      lastValue = v;
+    }
+
+    // scroll the tape
+    double right = toX(now);
+    double left = Math.max(right - width, 0);
+    for (int i = 0; i < tiles.length; i++) {
+      tiles[i].setLayoutX(tileIndex[i] * width - left);
+    }
+  }
+
+  /**
+   * Returns the y axis bound for the maximum of the window: the next nice
+   * step up, or the current bound until the maximum has stayed well below
+   * it for SHRINK_AFTER seconds.
+   *
+   * @param max largest value that has to fit
+   * @param now time of the newest sample in seconds
+   * @return the y axis upper bound
+   */
+  private double yBound(double max, double now) {
+    double snapped = snap(max);
+    if (snapped >= yMax || max > yMax * SHRINK_BELOW) {
+      shrinkSince = Double.NaN;
+      return Math.max(snapped, yMax);
+    }
+    if (Double.isNaN(shrinkSince)) shrinkSince = now;
+    if (now - shrinkSince < SHRINK_AFTER) return yMax;
+    shrinkSince = Double.NaN;
+    return snapped;
+  }
+
+  /**
+   * Rounds a value up to 1, 2 or 5 times a power of ten.
+   *
+   * @param value the value, greater than 0
+   * @return the nice value
+   */
+  private static double snap(double value) {
+    if (!(value > 0)) return 1;
+    double power = Math.pow(10, Math.floor(Math.log10(value)));
+    for (double step : NICE_STEPS) if (step * power >= value) return step * power;
+    return 10 * power;
+  }
+
+  /**
+   * Draws one line segment onto every tile it crosses.
+   *
+   * @param t0 time of the first point
+   * @param v0 value of the first point
+   * @param t1 time of the second point
+   * @param v1 value of the second point
+   */
+  private void segment(double t0, float v0, double t1, float v1) {
+    double x0 = toX(t0);
+    double x1 = toX(t1);
+    double y0 = height - v0 / yMax * height;
+    double y1 = height - v1 / yMax * height;
+    long firstTile = (long) Math.floor((x0 - LINE_WIDTH) / width);
+    long lastTile = (long) Math.floor((x1 + LINE_WIDTH) / width);
+    for (long k = Math.max(firstTile, 0); k <= lastTile; k++) {
+      GraphicsContext gc = tile(k).getGraphicsContext2D();
+      double shift = k * width;
+      gc.strokeLine(x0 - shift, y0, x1 - shift, y1);
+    }
+  }
+
+  /**
+   * Returns the canvas for a tape position, recycling the older tile if needed.
+   *
+   * @param k tape position
+   * @return the canvas that draws that position
+   */
+  private Canvas tile(long k) {
+    int i = (int) (k & 1);
+    if (tileIndex[i] != k) {
+      tileIndex[i] = k;
+      GraphicsContext gc = tiles[i].getGraphicsContext2D();
+      gc.clearRect(0, 0, width, height);
+      gc.setStroke(LINE_COLOR);
+      gc.setLineWidth(LINE_WIDTH);
+    }
+    return tiles[i];
+  }
+
+  /**
+   * Converts a time to a tape position in px.
+   *
+   * @param t time in seconds
+   * @return the x position on the tape
+   */
+  private double toX(double t) {
+    return (t - origin) * width / duration;
+  }
+
+  @Override
+  protected void layoutChildren() {
+    double top = snappedTopInset();
+    double left = snappedLeftInset();
+    double w = getWidth() - left - snappedRightInset();
+    double h = getHeight() - top - snappedBottomInset();
+    double axisW = yAxis.prefWidth(h);
+    double axisH = xAxis.prefHeight(w);
+    double pw = Math.max(w - axisW, 0);
+    double ph = Math.max(h - axisH, 0);
+
+    yAxis.resizeRelocate(left, top, axisW, ph);
+    xAxis.resizeRelocate(left + axisW, top + ph, pw, axisH);
+    plot.resizeRelocate(left + axisW, top, pw, ph);
+    clip.setWidth(pw);
+    clip.setHeight(ph);
+
+    if (pw != width || ph != height) {
+      width = pw;
+      height = ph;
+      for (Canvas tile : tiles) {
+        tile.setWidth(pw);
+        tile.setHeight(ph);
+      }
+      redraw = true;
+    }
+  }
+
+  @Override
+  protected double computePrefWidth(double height) {
+    return 400;
+  }
+
+  @Override
+  protected double computePrefHeight(double width) {
+    return 400;
+  }
+}
@@ -0,0 +1,268 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class receives the datagrams sent by TelemetrySender and checks them
+ * for loss. Run main() on the second screen or logging laptop to print the
+ * stream, or with --loopback to send a synthetic stream to itself and check
+ * that every sample arrives in order within the run time.
+ */
+public class TelemetryReceiver {
+
+  private static final long RECEIVE_TIMEOUT = 1000; // longest wait for one datagram in ms
+  private static final long LOOPBACK_GRACE = 2000; // wait past the run time for the last loopback datagrams in ms
+
+  private final DatagramChannel channel; // socket the datagrams arrive on
+  private final Selector selector; // waits for a datagram with a timeout
+  private final ByteBuffer packet = ByteBuffer.allocateDirect(65536).order(ByteOrder.LITTLE_ENDIAN); // last datagram
+  private int count = 0; // samples in the last datagram
+  private long first_sample = 0; // number of the first sample in the last datagram
+  private long next_sequence = -1; // sequence number expected next, -1 before the first datagram
+  private long next_sample = -1; // sample number expected next, -1 before the first datagram
+  private long packets = 0; // datagrams received
+  private long samples = 0; // samples received
+  private long lost_packets = 0; // datagrams missing from the sequence
+  private long lost_samples = 0; // samples missing from the stream, lost or dropped by the sender
+  private long reordered = 0; // datagrams older than one already received
+
+  /**
+   * Constructs a receiver listening on a port.
+   *
+   * @param port UDP port to listen on
+   * @throws IOException if the port can't be bound
+   */
+  public TelemetryReceiver(int port) throws IOException {
+    channel = DatagramChannel.open();
+    channel.bind(new InetSocketAddress(port));
+    channel.configureBlocking(false);
+    selector = Selector.open();
+    channel.register(selector, SelectionKey.OP_READ);
+  }
+
+  /**
+   * Waits for the next datagram and checks its sequence and sample numbers.
+   * Datagrams that aren't telemetry are skipped.
+   *
+   * @param timeout_ms longest wait in ms
+   * @return false if no datagram arrived in time
+   * @throws IOException if the socket fails
+   */
+  public boolean receive(long timeout_ms) throws IOException {
+    long deadline = System.nanoTime() + timeout_ms * 1000000L;
+    while (true) {
+      long wait = (deadline - System.nanoTime()) / 1000000L;
+      if (wait <= 0) return false;
+      selector.select(wait);
+      selector.selectedKeys().clear();
+      packet.clear();
+      if (channel.receive(packet) == null) continue;
+      packet.flip();
+      if (
+        packet.remaining() < TelemetrySender.HEADER_BYTES ||
+        packet.getInt(0) != TelemetrySender.MAGIC ||
+        packet.getShort(4) != TelemetrySender.VERSION
+      ) continue;
+      int n = packet.getShort(6);
+      if (n < 0 || packet.remaining() < TelemetrySender.HEADER_BYTES + n * TelemetrySender.SAMPLE_BYTES) continue;
+      count = n;
+      break;
+    }
+    long sequence = packet.getLong(8);
+    first_sample = packet.getLong(16);
+    packets++;
+    samples += count;
+    if (next_sequence >= 0 && sequence < next_sequence) {
+      reordered++;
+      return true;
+    }
+    if (next_sequence >= 0) {
+      lost_packets += sequence - next_sequence;
+      lost_samples += first_sample - next_sample;
+    }
+    next_sequence = sequence + 1;
+    next_sample = first_sample + count;
+    return true;
+  }
+
+  /**
+   * Closes the socket.
+   */
+  public void close() {
+    try {
+      selector.close();
+      channel.close();
+    } catch (IOException e) {}
+  }
+
+  /**
+   * Returns the number of samples in the last datagram.
+   *
+   * @return the sample count
+   */
+  public int getCount() {
+    return count;
+  }
+
+  /**
+   * Returns the number of a sample of the last datagram in the sender's stream.
+   *
+   * @param i index of the sample in the datagram
+   * @return the sample number, counting up from 0
+   */
+  public long getSampleNumber(int i) {
+    return first_sample + i;
+  }
+
+  /**
+   * Returns the time of a sample of the last datagram.
+   *
+   * @param i index of the sample in the datagram
+   * @return the wall clock time in ms
+   */
+  public double getTime(int i) {
+    return packet.getLong(24) + packet.getLong(offset(i)) / 1e6;
+  }
+
+  /**
+   * Returns the force in one axis of a sample of the last datagram.
+   *
+   * @param i index of the sample in the datagram
+   * @param axis ForcePipeline.X, Y or Z
+   * @return the force in lbf
+   */
+  public float getPounds(int i, int axis) {
+    return packet.getFloat(offset(i) + 8 + 4 * axis);
+  }
+
+  /**
+   * Returns the combined force of a sample of the last datagram.
+   *
+   * @param i index of the sample in the datagram
+   * @return the force in lbf
+   */
+  public float getCombined(int i) {
+    return packet.getFloat(offset(i) + 20);
+  }
+
+  /**
+   * Returns the high score when a sample of the last datagram was taken.
+   *
+   * @param i index of the sample in the datagram
+   * @return the high score in lbs
+   */
+  public float getHighScore(int i) {
+    return packet.getFloat(offset(i) + 24);
+  }
+
+  /**
+   * Returns whether a sample of the last datagram set a new high score.
+   *
+   * @param i index of the sample in the datagram
+   * @return true if the sample was flagged
+   */
+  public boolean isNewHighScore(int i) {
+    return (packet.getInt(offset(i) + 28) & TelemetrySender.FLAG_HIGH_SCORE) != 0;
+  }
+
+  /**
+   * Returns the position of a sample in the last datagram.
+   *
+   * @param i index of the sample in the datagram
+   * @return the byte offset
+   */
+  private static int offset(int i) {
+    return TelemetrySender.HEADER_BYTES + i * TelemetrySender.SAMPLE_BYTES;
+  }
+
+  /**
+   * Returns a summary of the datagrams received so far.
+   *
+   * @return packets, samples and losses on one line
+   */
+  public String report() {
+    return String.format(
+      "packets %d, samples %d, lost packets %d, lost samples %d, reordered %d",
+      packets,
+      samples,
+      lost_packets,
+      lost_samples,
+      reordered
+    );
+  }
+
+  /**
+   * Prints the telemetry arriving on a port: every high score and a summary
+   * each second. With --loopback it also sends a synthetic stream to the port
+   * from another thread and, once every sample arrived or a little after the
+   * given time, prints whether every sample arrived in order.
+   *
+   * @param args [--loopback] [port] [rate_hz] [seconds], port 5005, rate 240 and 5 seconds by default
+   * @throws Exception if the socket fails
+   */
+  public static void main(String[] args) throws Exception {
+    boolean loopback = args.length > 0 && args[0].equals("--loopback");
+    int a = loopback ? 1 : 0;
+    int port = args.length > a ? Integer.parseInt(args[a]) : 5005;
+    float rate = args.length > a + 1 ? Float.parseFloat(args[a + 1]) : 240;
+    float seconds = args.length > a + 2 ? Float.parseFloat(args[a + 2]) : 5;
+    TelemetryReceiver receiver = new TelemetryReceiver(port);
+
+    long total = (long) (rate * seconds);
+    TelemetrySender sender = null;
+    if (loopback) {
+      sender = new TelemetrySender(
+        new InetSocketAddress("127.0.0.1", port),
+        Settings.getInt("telemetry.queue", 4096),
+        Settings.getInt("telemetry.batch", 16),
+        Settings.getInt("telemetry.delay.ms", 20)
+      );
+      sender.start();
+      TelemetrySender out = sender;
+      Thread source = new Thread(() -> {
+        long period = (long) (1e9 / rate);
+        long next = System.nanoTime();
+        for (long i = 0; i < total; i++) {
+          float lb = (float) (50 + 50 * Math.sin(i * 2 * Math.PI / rate));
+          out.sample(next, lb, lb / 2, 0, lb, 100, i == total / 2);
+          next += period;
+          long wait = next - System.nanoTime();
+          if (wait > 0) LockSupport.parkNanos(wait);
+        }
+      }, "telemetry-source");
+      source.setDaemon(true);
+      source.start();
+    }
+
+    long expected = 0; // next sample number in a loopback run
+    boolean in_order = true;
+    long last_report = System.nanoTime();
+    long deadline = last_report + (long) (seconds * 1e9) + LOOPBACK_GRACE * 1000000L; // end of a loopback run
+    while (!loopback || (expected < total && System.nanoTime() - deadline < 0)) {
+      if (!receiver.receive(RECEIVE_TIMEOUT)) continue;
+      for (int i = 0; i < receiver.getCount(); i++) {
+        if (loopback && receiver.getSampleNumber(i) != expected) in_order = false;
+        expected = receiver.getSampleNumber(i) + 1;
+        if (receiver.isNewHighScore(i)) System.out.println(
+          String.format("%.3f new high score %.2flbf", receiver.getTime(i) / 1000, receiver.getCombined(i))
+        );
+      }
+      long now = System.nanoTime();
+      if (now - last_report >= 1000000000L) {
+        int last = receiver.getCount() - 1;
+        System.out.println(receiver.report() + String.format(", force %.2flbf", receiver.getCombined(last)));
+        last_report = now;
+      }
+    }
+    sender.stop();
+    System.out.println(receiver.report() + ", sender dropped " + sender.getDropped());
+    if (expected < total) in_order = false;
+    System.out.println(in_order ? "Loopback OK, every sample arrived in order" : "Loopback FAILED, samples were lost or out of order");
+    receiver.close();
+  }
+}
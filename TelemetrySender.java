@@ -0,0 +1,197 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class streams the live force samples over UDP so other machines can
+ * show or log them. The SampleStream thread only copies each sample into a
+ * bounded queue; a sender thread takes them out in batches
+ * and sends one datagram per batch. When the sender falls behind, the
+ * oldest queued samples are dropped so the caller never blocks.
+ *
+ * Every datagram is a 32 byte little-endian header:
+ *   int magic "ARMT", short version, short sample count,
+ *   long packet sequence number, counting up from 0,
+ *   long number of the first sample, counting up from 0,
+ *   long wall clock ms when sending started
+ * followed by 32 byte samples:
+ *   long ns since sending started, float x, y and z force (lbf),
+ *   float combined force (lbf), float high score (lbs), int flags (FLAG_HIGH_SCORE)
+ * A gap in the sequence numbers is a lost datagram; a gap in the sample
+ * numbers that isn't explained by lost datagrams is samples dropped from
+ * the queue.
+ */
+public class TelemetrySender implements Runnable {
+
+  public static final int MAGIC = 0x544D5241; // "ARMT" in little-endian
+  public static final short VERSION = 1; // datagram format version
+  public static final int HEADER_BYTES = 32; // datagram header size
+  public static final int SAMPLE_BYTES = 32; // size of every sample
+  public static final int MAX_BATCH = (1400 - HEADER_BYTES) / SAMPLE_BYTES; // most samples that fit an unfragmented datagram
+
+  public static final int FLAG_HIGH_SCORE = 0x01; // the sample set a new high score
+
+  private static final int FIELDS = 5; // x, y, z, combined and high score
+
+  private final InetSocketAddress target; // where the datagrams go
+  private final DatagramChannel channel; // socket the datagrams are sent from
+  private final ByteBuffer packet; // datagram being built
+  private final int batch; // samples per datagram
+  private final long max_delay; // longest a sample waits for its batch in ns
+  private final long start_time = System.nanoTime(); // sample times count from here
+  private final long start_ms = System.currentTimeMillis(); // wall clock time of start_time
+
+  // queue of samples, oldest overwritten first, guarded by this
+  private final int mask; // index mask, capacity is a power of two
+  private final long times[]; // sample timestamps in ns
+  private final float values[]; // FIELDS values per sample
+  private final int flags[]; // flags per sample
+  private long head = 0; // number of the next sample to send
+  private long tail = 0; // number of the next sample to queue
+  private long dropped = 0; // samples overwritten before they were sent
+
+  private long sequence = 0; // number of the next datagram, only touched by the sender thread
+  private long send_errors = 0; // datagrams that couldn't be sent, only touched by the sender thread
+  private volatile boolean running = false; // is the thread sending
+  private Thread thread; // sender thread
+
+  /**
+   * Constructs a sender and opens its socket.
+   *
+   * @param target host and port the datagrams are sent to
+   * @param capacity samples the queue holds, rounded up to a power of two
+   * @param batch samples per datagram, at most MAX_BATCH
+   * @param max_delay_ms longest a sample waits for a full batch in ms
+   * @throws IOException if the socket can't be opened
+   */
+  public TelemetrySender(InetSocketAddress target, int capacity, int batch, long max_delay_ms) throws IOException {
+    this.target = target;
+    this.batch = Math.max(1, Math.min(batch, MAX_BATCH));
+    this.max_delay = Math.max(1, max_delay_ms) * 1000000L;
+    int size = Integer.highestOneBit(Math.max(2, Math.max(capacity, this.batch) - 1)) << 1;
+    mask = size - 1;
+    times = new long[size];
+    values = new float[size * FIELDS];
+    flags = new int[size];
+    packet = ByteBuffer.allocateDirect(HEADER_BYTES + this.batch * SAMPLE_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    channel = DatagramChannel.open();
+  }
+
+  /**
+   * Starts the sender thread.
+   */
+  public void start() {
+    running = true;
+    thread = new Thread(this, "telemetry");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Sends the queued samples, stops the sender thread and closes the socket.
+   *
+   * @throws InterruptedException if the current thread is interrupted
+   */
+  public void stop() throws InterruptedException {
+    running = false;
+    if (thread != null) {
+      LockSupport.unpark(thread);
+      thread.join(1000);
+    }
+    try {
+      channel.close();
+    } catch (IOException e) {}
+  }
+
+  /**
+   * Queues one sample, dropping the oldest queued sample if the queue is full.
+   *
+   * @param time timestamp of the sample in ns
+   * @param x force in the x axis in lbf
+   * @param y force in the y axis in lbf
+   * @param z force in the z axis in lbf
+   * @param combined combined force in lbf
+   * @param high_score high score in lbs
+   * @param new_high_score did the sample set a new high score
+   */
+  public void sample(long time, float x, float y, float z, float combined, float high_score, boolean new_high_score) {
+    long queued;
+    synchronized (this) {
+      if (tail - head > mask) {
+        head++;
+        dropped++;
+      }
+      int slot = (int) tail & mask;
+      times[slot] = time;
+      values[slot * FIELDS] = x;
+      values[slot * FIELDS + 1] = y;
+      values[slot * FIELDS + 2] = z;
+      values[slot * FIELDS + 3] = combined;
+      values[slot * FIELDS + 4] = high_score;
+      flags[slot] = new_high_score ? FLAG_HIGH_SCORE : 0;
+      tail++;
+      queued = tail - head;
+    }
+    if (queued == batch || new_high_score) LockSupport.unpark(thread); // send a full batch or a high score right away
+  }
+
+  /**
+   * Returns the number of samples dropped because the sender fell behind.
+   *
+   * @return the number of dropped samples
+   */
+  public synchronized long getDropped() {
+    return dropped;
+  }
+
+  /**
+   * Sends a datagram whenever a batch is full, a high score is queued or the
+   * oldest sample has waited the longest delay, until stopped.
+   */
+  @Override
+  public void run() {
+    while (running) {
+      LockSupport.parkNanos(max_delay);
+      while (send()) {}
+    }
+    while (send()) {}
+  }
+
+  /**
+   * Takes up to one batch of samples from the queue and sends them.
+   *
+   * @return true if a full batch was sent and more may be waiting
+   */
+  private boolean send() {
+    int count;
+    packet.clear();
+    packet.position(HEADER_BYTES);
+    synchronized (this) {
+      count = (int) Math.min(tail - head, batch);
+      if (count == 0) return false;
+      packet.putLong(16, head);
+      for (int i = 0; i < count; i++) {
+        int slot = (int) (head + i) & mask;
+        packet.putLong(times[slot] - start_time);
+        for (int f = 0; f < FIELDS; f++) packet.putFloat(values[slot * FIELDS + f]);
+        packet.putInt(flags[slot]);
+      }
+      head += count;
+    }
+    packet.putInt(0, MAGIC);
+    packet.putShort(4, VERSION);
+    packet.putShort(6, (short) count);
+    packet.putLong(8, sequence++);
+    packet.putLong(24, start_ms);
+    packet.flip();
+    try {
+      channel.send(packet, target);
+    } catch (IOException e) {
+      if (send_errors++ == 0) System.out.println("Telemetry Not Responding: " + e.getMessage());
+    }
+    return count == batch;
+  }
+}
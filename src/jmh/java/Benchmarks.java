@@ -0,0 +1,198 @@
+import bench.HotPathBenchmark.Case;
+import com.pi4j.io.spi.SpiDevice;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.*;
+
+/**
+ * This class builds the benchmark cases of the sample to force to LED to chart
+ * hot path, without any hardware. Each case runs one operation per call and
+ * returns a value depending on the work done, which JMH consumes so the JIT
+ * can't drop the work. bench.HotPathBenchmark runs every case as its own JMH
+ * benchmark; run them with gradle jmh, which also reports the bytes allocated
+ * per operation with the gc profiler so allocation creeping into the sampling
+ * loop shows up before it reaches the booth.
+ */
+public class Benchmarks {
+
+  private static final int NUM_LEDS = 68; // same strip as the demo
+  private static final float SAMPLE_RATE = 240; // fastest ADC rate
+  private static final float CHART_WINDOW = 2; // seconds shown on the chart
+  private static final int CHART_POINTS = 200; // points drawn on the chart
+
+  /**
+   * SPI device that throws the frames away.
+   */
+  private static class SpiSink implements SpiDevice {
+
+    private long bytes = 0; // bytes written
+
+    @Override
+    public byte[] write(byte[] data, int start, int length) {
+      bytes += length;
+      return data;
+    }
+
+    @Override
+    public byte[] write(byte... data) {
+      return write(data, 0, data.length);
+    }
+
+    @Override
+    public short[] write(short[] data, int start, int length) {
+      bytes += 2L * length;
+      return data;
+    }
+
+    @Override
+    public short[] write(short... data) {
+      return write(data, 0, data.length);
+    }
+
+    @Override
+    public ByteBuffer write(ByteBuffer data) {
+      bytes += data.remaining();
+      return data;
+    }
+
+    @Override
+    public String write(String data, Charset charset) {
+      bytes += data.getBytes(charset).length;
+      return data;
+    }
+
+    @Override
+    public String write(String data, String charset) throws IOException {
+      return write(data, Charset.forName(charset));
+    }
+
+    @Override
+    public byte[] write(InputStream input) throws IOException {
+      byte data[] = input.readAllBytes();
+      return write(data, 0, data.length);
+    }
+
+    @Override
+    public int write(InputStream input, OutputStream output) throws IOException {
+      byte data[] = write(input);
+      output.write(data);
+      return data.length;
+    }
+  }
+
+  private Benchmarks() {}
+
+  /**
+   * Builds the benchmark cases in the order the hot path runs them.
+   *
+   * @return the cases by name
+   * @throws IOException if the LED strip can't be set up
+   */
+  public static Map<String, Case> getCases() throws IOException {
+    Map<String, Case> cases = new LinkedHashMap<>();
+    Random random = new Random(42);
+
+    // ADC output register bytes to counts to volts, as the sampling thread does
+    byte config = AcquisitionProfile.SPS_15.getConfig(Mcp342x.CMD_CH_1, Mcp342x.CMD_GAIN_1);
+    Mcp342x adc = new Mcp342x(null, config);
+    int bits = Mcp342x.bitsOf(config);
+    byte frames[][] = new byte[256][3];
+    for (byte[] f : frames) random.nextBytes(f);
+    int frame[] = { 0 };
+    cases.put("mcp342x.decode", () -> adc.toVoltage(Mcp342x.decode(frames[frame[0]++ & 255], bits)));
+
+    // handoff from the sampling thread to the UI thread
+    SampleRing ring = new SampleRing(1024);
+    float sample[] = new float[SampleRing.AXES];
+    int offered[] = { 0 };
+    cases.put(
+      "ring.offer+poll",
+      () -> {
+        int i = offered[0]++;
+        ring.offer(i, i, i, i, i, i, i);
+        ring.poll(sample);
+        return sample[0];
+      }
+    );
+
+    // voltages to lbf, high score, chart window and tick average
+    float volts[] = new float[1024];
+    for (int i = 0; i < volts.length; i++) volts[i] = (float) (0.05 * Math.abs(Math.sin(i * 0.01)));
+    ForcePipeline forces = new ForcePipeline((int) (CHART_WINDOW * SAMPLE_RATE * 2) + 16, CHART_WINDOW);
+    forces.calibrate(new float[] { 700, 700, 700 });
+    forces.setOffsets();
+    long period = (long) (1e9 / SAMPLE_RATE);
+    long time[] = { 0 };
+    int forced[] = { 0 };
+    cases.put(
+      "force.pipeline",
+      () -> {
+        float v = volts[forced[0]++ & 1023];
+        forces.add(time[0] += period, v, v * 0.5f, 0);
+        return forces.getCombined();
+      }
+    );
+
+    // a typical filter chain on every axis
+    FilterChain chains[] = new FilterChain[SampleRing.AXES];
+    for (int i = 0; i < chains.length; i++) chains[i] = FilterChain.parse("median:5,avg:8,iir:0.3");
+    int filtered[] = { 0 };
+    cases.put(
+      "filter.chain",
+      () -> {
+        float v = volts[filtered[0]++ & 1023];
+        float sum = 0;
+        for (FilterChain chain : chains) sum += chain.apply(v);
+        return sum;
+      }
+    );
+
+    // bar gradient, computed once at startup but cheap to regress
+    int led[] = { 0 };
+    cases.put("led.palette", () -> Station.getScalePalette(NUM_LEDS)[led[0]++ % NUM_LEDS]);
+
+    // force bar frame encoded and written to SPI, the level changes every frame
+    SpiSink spi = new SpiSink();
+    DotStar strip = new DotStar(NUM_LEDS, "BGR", spi);
+    int palette[] = Station.getScalePalette(NUM_LEDS);
+    int level[] = { 0 };
+    cases.put(
+      "dotstar.scale+show",
+      () -> {
+        strip.setPixels(palette, level[0]++ % (NUM_LEDS + 1));
+        strip.show();
+        return spi.bytes;
+      }
+    );
+
+    // high score flash, every pixel changes every frame
+    LedAnimator.Animation rainbow = LedAnimator.rainbow(NUM_LEDS, Integer.MAX_VALUE);
+    long rainbow_frame[] = { 0 };
+    cases.put(
+      "dotstar.rainbow+show",
+      () -> {
+        rainbow.render(strip, rainbow_frame[0]++);
+        strip.show();
+        return spi.bytes;
+      }
+    );
+
+    // chart window of the fastest rate downsampled for the line chart
+    SlidingWindow window = new SlidingWindow((int) (CHART_WINDOW * SAMPLE_RATE * 2) + 16, CHART_WINDOW);
+    double xs[] = new double[CHART_POINTS];
+    float ys[] = new float[CHART_POINTS];
+    int added[] = { 0 };
+    for (; added[0] < CHART_WINDOW * SAMPLE_RATE; added[0]++) window.add(added[0] / (double) SAMPLE_RATE, volts[added[0] & 1023]);
+    cases.put(
+      "chart.window+lttb",
+      () -> {
+        int i = added[0]++;
+        window.add(i / (double) SAMPLE_RATE, volts[i & 1023]);
+        return (float) xs[Lttb.downsample(window, CHART_POINTS, xs, ys) - 1];
+      }
+    );
+
+    return cases;
+  }
+}
@@ -0,0 +1,105 @@
+package bench;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * This class runs each case of the sample to force to LED to chart hot path
+ * as a JMH benchmark. JMH only accepts benchmarks in a named package, and a
+ * named package can't refer to the demo's classes in the default package, so
+ * the cases are built by Benchmarks and looked up here once per fork. Each
+ * benchmark calls a single case, so the call is monomorphic and inlined.
+ *
+ * Run with gradle jmh, or gradle jmh -Pjmh.includes=dotstar to pick cases.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class HotPathBenchmark {
+
+  /**
+   * One benchmarked operation.
+   */
+  public interface Case {
+    /**
+     * Runs the operation once.
+     *
+     * @return a value depending on the work done
+     * @throws IOException if the operation fails
+     */
+    float run() throws IOException;
+  }
+
+  private Case decode; // ADC frame to volts
+  private Case ring; // sampling thread to UI thread handoff
+  private Case pipeline; // volts to lbf, high score and chart window
+  private Case filter; // filter chain on every axis
+  private Case palette; // bar gradient
+  private Case scale; // force bar frame to SPI
+  private Case rainbow; // rainbow frame to SPI
+  private Case chart; // chart window and LTTB
+
+  /**
+   * Builds the cases.
+   *
+   * @throws ReflectiveOperationException if Benchmarks can't be found
+   */
+  @Setup
+  @SuppressWarnings("unchecked")
+  public void setup() throws ReflectiveOperationException {
+    Map<String, Case> cases = (Map<String, Case>) Class.forName("Benchmarks").getMethod("getCases").invoke(null);
+    decode = cases.get("mcp342x.decode");
+    ring = cases.get("ring.offer+poll");
+    pipeline = cases.get("force.pipeline");
+    filter = cases.get("filter.chain");
+    palette = cases.get("led.palette");
+    scale = cases.get("dotstar.scale+show");
+    rainbow = cases.get("dotstar.rainbow+show");
+    chart = cases.get("chart.window+lttb");
+  }
+
+  @Benchmark
+  public float mcp342xDecode() throws IOException {
+    return decode.run();
+  }
+
+  @Benchmark
+  public float ringOfferPoll() throws IOException {
+    return ring.run();
+  }
+
+  @Benchmark
+  public float forcePipeline() throws IOException {
+    return pipeline.run();
+  }
+
+  @Benchmark
+  public float filterChain() throws IOException {
+    return filter.run();
+  }
+
+  @Benchmark
+  public float ledPalette() throws IOException {
+    return palette.run();
+  }
+
+  @Benchmark
+  public float dotstarScaleShow() throws IOException {
+    return scale.run();
+  }
+
+  @Benchmark
+  public float dotstarRainbowShow() throws IOException {
+    return rainbow.run();
+  }
+
+  @Benchmark
+  public float chartWindowLttb() throws IOException {
+    return chart.run();
+  }
+}
@@ -0,0 +1,78 @@
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Feeds PullDetector a synthetic pull sampled at 1 kHz and checks the one
+ * Pull it finds.
+ */
+public class PullDetectorTest {
+
+  private static final long MS = 1000000L; // ns per ms
+
+  /**
+   * Returns the force of the synthetic pull: it rises at 400 lbf/s from 100 ms,
+   * holds 200 lbs from 600 ms, falls at 2000 lbf/s from 800 ms and stays at 0
+   * from 900 ms, with a dip to 0 between dip_from and dip_to ms.
+   *
+   * @param ms time in ms
+   * @param dip_from start of the dip in ms
+   * @param dip_to end of the dip in ms
+   * @return the force in lbs
+   */
+  private static float force(int ms, int dip_from, int dip_to) {
+    if (ms >= dip_from && ms < dip_to) return 0;
+    if (ms < 100) return 0;
+    if (ms < 800) return Math.min(0.4f * (ms - 100), 200);
+    return Math.max(200 - 2f * (ms - 800), 0);
+  }
+
+  @Test
+  public void findsOnePullWithItsPeakImpulseAndRfd() {
+    PullDetector detector = new PullDetector(10, 5, 250, 50);
+    PullDetector.Pull pull = null;
+    int pulls = 0;
+    for (int ms = 0; ms < 2000; ms++) {
+      PullDetector.Pull ended = detector.add(ms * MS, force(ms, -1, -1));
+      if (ended != null) {
+        pull = ended;
+        pulls++;
+      }
+    }
+    assertEquals(1, pulls);
+    assertEquals(126 * MS, pull.getStart()); // first sample above 10 lbs, 10.4 lbs
+    assertEquals(200, pull.getPeak(), 0);
+    assertEquals(0.474, pull.getTimeToPeak(), 1e-6);
+    assertEquals(0.772, pull.getDuration(), 1e-6); // until the force fell below 5 lbs at 898 ms
+    // 49.8648 rising, 40 holding and 9.996 falling
+    assertEquals(99.8608, pull.getImpulse(), 1e-3);
+    assertEquals(400, pull.getRfd(), 0.01);
+    assertEquals(400, pull.getPeakRfd(), 0.01); // the steepest 50 ms is on the rise
+  }
+
+  @Test
+  public void shortDipDoesNotSplitThePull() {
+    PullDetector detector = new PullDetector(10, 5, 250, 50);
+    int pulls = 0;
+    for (int ms = 0; ms < 2000; ms++) {
+      if (detector.add(ms * MS, force(ms, 650, 750)) != null) pulls++;
+    }
+    assertEquals(1, pulls);
+    assertFalse(detector.isPulling());
+  }
+
+  @Test
+  public void longRampKeepsTheSlopeOfTheLastWindow() {
+    // a 5 s pull at 2 kHz wraps the sample ring many times over and
+    // moves every sample in and out of the sums
+    PullDetector detector = new PullDetector(10, 5, 250, 50);
+    PullDetector.Pull pull = null;
+    for (int i = 0; i < 12000 && pull == null; i++) {
+      long time = i * MS / 2;
+      float force = i < 10000 ? 20 + 0.05f * i : 0; // 100 lbf/s, then released
+      pull = detector.add(time, force);
+    }
+    assertNotNull(pull);
+    assertEquals(100, pull.getPeakRfd(), 0.01);
+  }
+}
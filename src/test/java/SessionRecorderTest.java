@@ -0,0 +1,144 @@
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Records a known session with SessionRecorder and reads it back with
+ * SessionReader.
+ */
+public class SessionRecorderTest {
+
+  private static final float VOLTS_PER_COUNT[] = { 62.5e-6f, 15.625e-6f, 1e-3f }; // ADC scale of each axis
+  private static final int SAMPLES = 60; // samples recorded
+  private static final int STATE_AFTER = 25; // samples before the state change
+  private static final int HIGH_SCORE_AT = 40; // sample that sets a new high score
+  private static final int GAP_AT = 50; // sample recorded after a pause too long for a time delta
+  private static final float HIGH_SCORE = 123.5f; // high score set by that sample
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * Returns the time of a sample: 860 samples per second with a pause before GAP_AT.
+   *
+   * @param start time of the first sample in ns
+   * @param i number of the sample
+   * @return the time in ns
+   */
+  private static long time(long start, int i) {
+    return start + i * 1162790L + (i >= GAP_AT ? 3000000000L : 0);
+  }
+
+  /**
+   * Returns the counts of an axis of a sample, positive, negative and missing.
+   *
+   * @param i number of the sample
+   * @param axis X, Y or Z
+   * @return the raw conversion
+   */
+  private static int raw(int i, int axis) {
+    if (axis == ForcePipeline.X) return i * 1000 - 30000;
+    if (axis == ForcePipeline.Y) return -i;
+    return i % 7 == 3 ? SampleRing.NO_RAW : i * 5;
+  }
+
+  /**
+   * Returns a state with distinct offsets and sensitivities.
+   *
+   * @param offset offset of the x axis, y and z get 1 and 2 more
+   * @param restart did the pull detection restart with the state
+   * @return the state
+   */
+  private static SessionReader.State state(float offset, boolean restart) {
+    ForcePipeline forces = new ForcePipeline(2, 1);
+    for (int i = 0; i < ForcePipeline.AXES; i++) {
+      forces.setOffset(i, offset + i);
+      forces.setSensitivity(i, 1000 + 100 * i);
+    }
+    forces.setHighScore(50);
+    forces.setZeroed(true);
+    forces.setCalibrated(true);
+    return new SessionReader.State(forces, restart);
+  }
+
+  /**
+   * Checks that a state read back is the one recorded.
+   *
+   * @param expected the recorded state
+   * @param actual the state read back
+   * @param high_score the high score expected, which samples may have raised
+   */
+  private static void assertState(SessionReader.State expected, SessionReader.State actual, float high_score) {
+    for (int i = 0; i < ForcePipeline.AXES; i++) {
+      assertEquals(expected.getOffset(i), actual.getOffset(i), 0);
+      assertEquals(expected.getSensitivity(i), actual.getSensitivity(i), 0);
+    }
+    assertEquals(high_score, actual.getHighScore(), 0);
+    assertEquals(expected.isZeroed(), actual.isZeroed());
+    assertEquals(expected.isCalibrated(), actual.isCalibrated());
+  }
+
+  @Test
+  public void readsBackSamplesAndStatesAcrossSegments() throws IOException {
+    File dir = folder.newFolder("session");
+    SessionReader.State first = state(0.25f, false);
+    SessionReader.State second = state(-1.5f, true);
+    long start = System.nanoTime();
+    SessionRecorder recorder = new SessionRecorder(dir, 512, VOLTS_PER_COUNT);
+    recorder.state(first);
+    for (int i = 0; i < SAMPLES; i++) {
+      if (i == STATE_AFTER) recorder.state(second);
+      recorder.sample(
+        time(start, i),
+        raw(i, ForcePipeline.X),
+        raw(i, ForcePipeline.Y),
+        raw(i, ForcePipeline.Z),
+        i == HIGH_SCORE_AT ? HIGH_SCORE : 0
+      );
+    }
+    recorder.close();
+    assertTrue("the session should span several segments", dir.listFiles().length > 2);
+
+    int samples = 0;
+    int states = 0;
+    List<Integer> restarts = new ArrayList<>(); // samples before each STATE record that restarted the pulls
+    try (SessionReader reader = new SessionReader(dir)) {
+      while (reader.next()) {
+        if (reader.getType() == SessionRecorder.STATE) {
+          SessionReader.State state = reader.getState();
+          if (state.isRestart()) restarts.add(samples);
+          if (states++ == 0) assertState(new SessionReader.State(), state, 0); // the header's, before state()
+          else assertState(restarts.isEmpty() ? first : second, state, samples > HIGH_SCORE_AT ? HIGH_SCORE : 50);
+        } else if (reader.getType() == SessionRecorder.SAMPLE) {
+          int i = samples++;
+          assertEquals("time of sample " + i, time(start, i), reader.getTime());
+          assertEquals(i == HIGH_SCORE_AT, reader.isHighScore());
+          for (int axis = 0; axis < ForcePipeline.AXES; axis++) {
+            int raw = raw(i, axis);
+            assertEquals(raw, reader.getRaw(axis));
+            float volts = raw == SampleRing.NO_RAW ? Float.NaN : raw * VOLTS_PER_COUNT[axis];
+            assertEquals(volts, reader.getVoltage(axis), 0);
+          }
+        }
+      }
+    }
+    assertEquals(SAMPLES, samples);
+    assertEquals(List.of(STATE_AFTER), restarts);
+  }
+
+  @Test
+  public void replayedStateRestartsPulls() {
+    ForcePipeline forces = new ForcePipeline(2, 1);
+    long restarts = forces.getRestarts();
+    state(0, false).apply(forces);
+    assertEquals(restarts, forces.getRestarts());
+    state(0, true).apply(forces);
+    assertEquals(restarts + 1, forces.getRestarts());
+  }
+}